@@ -0,0 +1,64 @@
+package jlox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/* Each phase of the tree-walking interpreter on its own, fed by the output of the phase before. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhaseBenchmark {
+
+    @Param({"binary_trees", "equality", "fib", "instantiation", "method_call", "properties",
+            "string_equality", "trees", "zoo"})
+    public String workload;
+
+    private String source;
+    private TokenBuffer tokens;
+    private List<Stmt> statements;
+
+    @Setup public void setUp() {
+        source = Workloads.source(workload);
+        tokens = new Scanner(source).scanTokens();
+        statements = new Parser(tokens).parse();
+        new Resolver().resolve(statements);
+        Workloads.silence();
+    }
+
+    @TearDown public void tearDown() {
+        Workloads.restore();
+    }
+
+    @Benchmark public TokenBuffer scan() {
+        return new Scanner(source).scanTokens();
+    }
+
+    @Benchmark public List<Stmt> parse() {
+        return new Parser(tokens).parse();
+    }
+
+    @Benchmark public List<Stmt> resolve() {
+        new Resolver().resolve(statements);
+        return statements;
+    }
+
+    @Benchmark public void interpret() {
+        new Interpreter().interpret(statements);
+    }
+}
@@ -0,0 +1,50 @@
+package jlox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/* Whole runs of the benchmark programs, from source text to the last print, on the interpreter and the VM. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProgramBenchmark {
+
+    @Param({"binary_trees", "equality", "fib", "instantiation", "method_call", "properties",
+            "string_equality", "trees", "zoo"})
+    public String workload;
+
+    @Param({"false", "true"})
+    public boolean vm;
+
+    private String source;
+    private Lox lox;
+
+    @Setup public void setUp() {
+        source = Workloads.source(workload);
+        lox = new Lox(vm, Jit.THRESHOLD);
+        Workloads.silence();
+    }
+
+    @TearDown public void tearDown() {
+        Workloads.restore();
+    }
+
+    @Benchmark public void run() {
+        lox.run(source);
+    }
+}
@@ -0,0 +1,35 @@
+package jlox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/* The classic Lox benchmark programs, scaled down so one run takes a fraction of a second. */
+final class Workloads {
+    private static PrintStream out;
+
+    private Workloads() {}
+
+    static String source(String name) {
+        try (InputStream in = Workloads.class.getResourceAsStream("/benchmark/" + name + ".lox")) {
+            if (in == null) throw new IllegalArgumentException("No workload " + name);
+            return new String(in.readAllBytes(), UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /* The programs print their results, which is no part of what is measured. */
+    static void silence() {
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    static void restore() {
+        System.setOut(out);
+    }
+}
@@ -0,0 +1,73 @@
+package jlox;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static jlox.AstWriter.FALSE;
+import static jlox.AstWriter.NIL;
+import static jlox.AstWriter.NUMBER;
+import static jlox.AstWriter.STRING;
+import static jlox.AstWriter.TRUE;
+
+/* Reads back what the AstWriter wrote. Malformed input is an IOException, whatever part of it is off. */
+final class AstReader extends DataInputStream {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    interface Element<T> {
+        T read(AstReader in) throws IOException;
+    }
+
+    private final List<String> strings = new ArrayList<>();
+
+    AstReader(InputStream in) {
+        super(in);
+    }
+
+    List<Stmt> readStmts() throws IOException {
+        return readList(Stmt::read);
+    }
+
+    <T> List<T> readList(Element<T> element) throws IOException {
+        int size = readInt();
+        if (size < 0) throw new IOException("Negative list size.");
+        List<T> list = new ArrayList<>(Math.min(size, 1024));
+        for (int i = 0; i < size; ++i) list.add(element.read(this));
+        return list;
+    }
+
+    Token readToken() throws IOException {
+        int type = readUnsignedByte();
+        if (type >= TYPES.length) throw new IOException("Unknown token type.");
+        return new Token(TYPES[type], readString(), readValue(), readInt());
+    }
+
+    Object readValue() throws IOException {
+        return switch (readByte()) {
+            case NIL -> null;
+            case FALSE -> false;
+            case TRUE -> true;
+            case NUMBER -> readDouble();
+            case STRING -> readString();
+            default -> throw new IOException("Unknown literal.");
+        };
+    }
+
+    private String readString() throws IOException {
+        int length = readInt();
+        if (length < 0) {
+            if (~length >= strings.size()) throw new IOException("Unknown string.");
+            return strings.get(~length);
+        }
+        // Read in pieces, so a corrupt length fails at the end of the file instead of allocating all of it up front.
+        byte[] bytes = readNBytes(length);
+        if (bytes.length != length) throw new EOFException();
+        String string = new String(bytes, UTF_8);
+        strings.add(string);
+        return string;
+    }
+}
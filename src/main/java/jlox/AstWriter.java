@@ -0,0 +1,72 @@
+package jlox;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/* Writes resolved syntax trees for the AstReader, the nodes write their own fields in code from the ASTGenerator. */
+final class AstWriter extends DataOutputStream {
+    static final byte NIL = 0, FALSE = 1, TRUE = 2, NUMBER = 3, STRING = 4;
+
+    // Each string is written once, later occurrences refer back to it by its number.
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    AstWriter(OutputStream out) {
+        super(out);
+    }
+
+    void writeStmts(List<Stmt> statements) throws IOException {
+        writeInt(statements.size());
+        for (Stmt statement : statements) writeStmt(statement);
+    }
+
+    void writeStmt(Stmt stmt) throws IOException {
+        if (stmt == null) writeByte(0);
+        else stmt.write(this);
+    }
+
+    void writeExpr(Expr expr) throws IOException {
+        if (expr == null) writeByte(0);
+        else expr.write(this);
+    }
+
+    void writeToken(Token token) throws IOException {
+        writeByte(token.type().ordinal());
+        writeString(token.lexeme());
+        writeValue(token.literal());
+        writeInt(token.line());
+    }
+
+    void writeValue(Object value) throws IOException {
+        if (value == null) {
+            writeByte(NIL);
+        } else if (value instanceof Boolean bool) {
+            writeByte(bool ? TRUE : FALSE);
+        } else if (value instanceof Double number) {
+            writeByte(NUMBER);
+            writeDouble(number);
+        } else if (value instanceof CharSequence string) {
+            writeByte(STRING);
+            writeString(string.toString());
+        } else {
+            throw new IOException("Cannot write " + value.getClass().getSimpleName() + " literal.");
+        }
+    }
+
+    /* A new string as its length and UTF-8 bytes, a repeated one as the complement of its number. */
+    private void writeString(String string) throws IOException {
+        Integer number = strings.putIfAbsent(string, strings.size());
+        if (number != null) {
+            writeInt(~number);
+            return;
+        }
+        byte[] bytes = string.getBytes(UTF_8);
+        writeInt(bytes.length);
+        write(bytes);
+    }
+}
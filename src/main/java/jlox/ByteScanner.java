@@ -0,0 +1,327 @@
+package jlox;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static java.lang.Double.parseDouble;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static jlox.TokenType.AND;
+import static jlox.TokenType.BANG;
+import static jlox.TokenType.BANG_EQUAL;
+import static jlox.TokenType.CLASS;
+import static jlox.TokenType.COMMA;
+import static jlox.TokenType.DOT;
+import static jlox.TokenType.ELSE;
+import static jlox.TokenType.EOF;
+import static jlox.TokenType.EQUAL;
+import static jlox.TokenType.EQUAL_EQUAL;
+import static jlox.TokenType.FALSE;
+import static jlox.TokenType.FOR;
+import static jlox.TokenType.FUN;
+import static jlox.TokenType.GREATER;
+import static jlox.TokenType.GREATER_EQUAL;
+import static jlox.TokenType.IDENTIFIER;
+import static jlox.TokenType.IF;
+import static jlox.TokenType.LEFT_BRACE;
+import static jlox.TokenType.LEFT_PAREN;
+import static jlox.TokenType.LESS;
+import static jlox.TokenType.LESS_EQUAL;
+import static jlox.TokenType.MINUS;
+import static jlox.TokenType.NIL;
+import static jlox.TokenType.NUMBER;
+import static jlox.TokenType.OR;
+import static jlox.TokenType.PLUS;
+import static jlox.TokenType.PRINT;
+import static jlox.TokenType.RETURN;
+import static jlox.TokenType.RIGHT_BRACE;
+import static jlox.TokenType.RIGHT_PAREN;
+import static jlox.TokenType.SEMICOLON;
+import static jlox.TokenType.SLASH;
+import static jlox.TokenType.STAR;
+import static jlox.TokenType.STRING;
+import static jlox.TokenType.SUPER;
+import static jlox.TokenType.THIS;
+import static jlox.TokenType.TRUE;
+import static jlox.TokenType.VAR;
+import static jlox.TokenType.WHILE;
+
+/*
+ * Scanner for files, working on the raw bytes of a memory mapping, copied a window at a time into an array.
+ * Lox needs nothing but ASCII outside of strings and comments, so every byte is a char: character classes come
+ * from a table and keywords from a switch on their letters. UTF-8 never uses ASCII bytes inside a multi-byte
+ * character, so strings and comments are found by their ASCII delimiters whatever they hold. Any other byte
+ * outside ASCII hands the rest of the file, from the start of its token, to a Scanner decoding UTF-8.
+ */
+class ByteScanner implements TokenSource {
+    private static final int END = -1;
+    private static final int WINDOW = 1 << 16;
+
+    private static final byte DIGIT = 1;
+    private static final byte ALPHA = 2;
+    private static final byte[] CLASSES = new byte[128];
+
+    static {
+        for (int c = '0'; c <= '9'; ++c) CLASSES[c] = DIGIT;
+        for (int c = 'a'; c <= 'z'; ++c) CLASSES[c] = ALPHA;
+        for (int c = 'A'; c <= 'Z'; ++c) CLASSES[c] = ALPHA;
+        CLASSES['_'] = ALPHA;
+    }
+
+    // Powers of ten up to the last one a double holds exactly.
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; ++i) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private final FileChannel channel;
+    private final Reporter reporter;
+    private final MappedByteBuffer mapping;
+    private int mapped = 0;
+    // Only the bytes from the start of the current token on stay in the window, offset is where it begins in the file.
+    private byte[] window = new byte[WINDOW];
+    private int offset = 0;
+    private int limit = 0;
+    private int start = 0, current = 0;
+    private int line = 1, startLine = 1;
+    private Scanner fallback;
+
+    /* Mappings end at 2GB, bigger files are for the Scanner. */
+    ByteScanner(FileChannel channel) throws IOException {
+        this(channel, new Reporter(ErrorSink.STDERR));
+    }
+
+    ByteScanner(FileChannel channel, Reporter reporter) throws IOException {
+        this.channel = channel;
+        this.reporter = reporter;
+        this.mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    @Override public Token nextToken() {
+        if (fallback != null) return fallback.nextToken();
+        while (peek() != END) {
+            start = current;
+            startLine = line;
+            Token token = scanToken();
+            if (token != null) return token;
+            if (fallback != null) return fallback.nextToken();
+        }
+        return new Token(EOF, "", null, line);
+    }
+
+    /* Null for whitespace, comments, errors and the switch to the Scanner. */
+    private Token scanToken() {
+        int c = advance();
+        return switch (c) {
+            case '(' -> token(LEFT_PAREN, "(");
+            case ')' -> token(RIGHT_PAREN, ")");
+            case '{' -> token(LEFT_BRACE, "{");
+            case '}' -> token(RIGHT_BRACE, "}");
+            case ',' -> token(COMMA, ",");
+            case '.' -> token(DOT, ".");
+            case '-' -> token(MINUS, "-");
+            case '+' -> token(PLUS, "+");
+            case ';' -> token(SEMICOLON, ";");
+            case '*' -> token(STAR, "*");
+            case '!' -> match('=') ? token(BANG_EQUAL, "!=") : token(BANG, "!");
+            case '=' -> match('=') ? token(EQUAL_EQUAL, "==") : token(EQUAL, "=");
+            case '<' -> match('=') ? token(LESS_EQUAL, "<=") : token(LESS, "<");
+            case '>' -> match('=') ? token(GREATER_EQUAL, ">=") : token(GREATER, ">");
+            case '/' -> { // A comment goes until EOL
+                if (!match('/')) yield token(SLASH, "/");
+                while (peek() != '\n' && peek() != END) {
+                    advance();
+                    start = current; // the comment need not stay in the window
+                }
+                yield null;
+            }
+            case ' ', '\t', '\r' -> null; // ignore whitespace
+            case '\n' -> {
+                ++line;
+                yield null;
+            }
+            case '"' -> string();
+            default -> {
+                if (c > 0x7f) yield fallBack();
+                if (CLASSES[c] == DIGIT) yield digit(c);
+                if (CLASSES[c] == ALPHA) yield identifier();
+                reporter.error(line, "Unexpected character '" + (char) c + "'");
+                yield null;
+            }
+        };
+    }
+
+    private Token string() {
+        boolean ascii = true;
+        int c;
+        while ((c = peek()) != '"' && c != END) {
+            if (c == '\n') ++line;
+            if (c > 0x7f) ascii = false;
+            advance();
+        }
+
+        if (c == END) {
+            reporter.error(line, "Unterminated string.");
+            return null;
+        }
+
+        advance();
+        Charset charset = ascii ? US_ASCII : UTF_8;
+        String lexeme = new String(window, start, current - start, charset);
+        String value = new String(window, start + 1, current - start - 2, charset);
+        return new Token(STRING, lexeme, value, line);
+    }
+
+    /* Numbers of up to 15 digits with short fractions are exactly a long divided by a power of ten. */
+    private Token digit(int first) {
+        long digits = first - '0';
+        int count = 1;
+        int c;
+        while (isDigit(c = peek())) {
+            digits = digits * 10 + (c - '0');
+            ++count;
+            advance();
+        }
+
+        int fraction = 0;
+        if (c == '.' && isDigit(peekNext())) {
+            advance();
+            while (isDigit(c = peek())) {
+                digits = digits * 10 + (c - '0');
+                ++count;
+                ++fraction;
+                advance();
+            }
+        }
+        if (c > 0x7f) return fallBack(); // the Scanner takes other scripts' digits too
+
+        String text = text();
+        double value = count <= 15 && fraction < POWERS_OF_TEN.length
+                ? digits / POWERS_OF_TEN[fraction]
+                : parseDouble(text);
+        return new Token(NUMBER, text, value, line);
+    }
+
+    private Token identifier() {
+        while (isAlphaNumeric(peek())) advance();
+        if (peek() > 0x7f) return fallBack();
+        TokenType type = keyword();
+        Symbol symbol = Symbol.Table.DEFAULT.intern(window, start, current);
+        return new Token(type, symbol.name, null, line, Token.isName(type) ? symbol : null);
+    }
+
+    /* Branches on the letters that tell the keywords apart, then compares the rest. */
+    private TokenType keyword() {
+        int length = current - start;
+        return switch (window[start]) {
+            case 'a' -> rest(1, "nd", AND);
+            case 'c' -> rest(1, "lass", CLASS);
+            case 'e' -> rest(1, "lse", ELSE);
+            case 'f' -> length < 2 ? IDENTIFIER : switch (window[start + 1]) {
+                case 'a' -> rest(2, "lse", FALSE);
+                case 'o' -> rest(2, "r", FOR);
+                case 'u' -> rest(2, "n", FUN);
+                default -> IDENTIFIER;
+            };
+            case 'i' -> rest(1, "f", IF);
+            case 'n' -> rest(1, "il", NIL);
+            case 'o' -> rest(1, "r", OR);
+            case 'p' -> rest(1, "rint", PRINT);
+            case 'r' -> rest(1, "eturn", RETURN);
+            case 's' -> rest(1, "uper", SUPER);
+            case 't' -> length < 2 ? IDENTIFIER : switch (window[start + 1]) {
+                case 'h' -> rest(2, "is", THIS);
+                case 'r' -> rest(2, "ue", TRUE);
+                default -> IDENTIFIER;
+            };
+            case 'v' -> rest(1, "ar", VAR);
+            case 'w' -> rest(1, "hile", WHILE);
+            default -> IDENTIFIER;
+        };
+    }
+
+    private TokenType rest(int from, String rest, TokenType type) {
+        if (current - start != from + rest.length()) return IDENTIFIER;
+        for (int i = 0; i < rest.length(); ++i) {
+            if (window[start + from + i] != rest.charAt(i)) return IDENTIFIER;
+        }
+        return type;
+    }
+
+    /* Rescans from the start of the current token on, decoding UTF-8. */
+    private Token fallBack() {
+        try {
+            channel.position(offset + start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fallback = new Scanner(Channels.newReader(channel, UTF_8), startLine, reporter, Symbol.Table.DEFAULT);
+        return null;
+    }
+
+    private boolean match(char expected) {
+        if (peek() != expected) return false;
+        ++current;
+        return true;
+    }
+
+    private Token token(TokenType type, String lexeme) {
+        return new Token(type, lexeme, null, line);
+    }
+
+    private String text() {
+        return new String(window, start, current - start, US_ASCII);
+    }
+
+    // Only after peek has seen the byte.
+    private int advance() {
+        return window[current++] & 0xff;
+    }
+
+    private int peek() {
+        if (current == limit && !fill()) return END;
+        return window[current] & 0xff;
+    }
+
+    private int peekNext() {
+        while (current + 1 >= limit) {
+            if (!fill()) return END;
+        }
+        return window[current + 1] & 0xff;
+    }
+
+    /* Moves the current token to the front of the window, growing it for long tokens, and copies in what follows. */
+    private boolean fill() {
+        int remaining = mapping.limit() - mapped;
+        if (remaining == 0) return false;
+        if (start > 0) {
+            System.arraycopy(window, start, window, 0, limit - start);
+            offset += start;
+            limit -= start;
+            current -= start;
+            start = 0;
+        }
+        if (limit == window.length)
+            window = Arrays.copyOf(window, window.length * 2);
+        int count = Math.min(remaining, window.length - limit);
+        mapping.get(mapped, window, limit, count);
+        mapped += count;
+        limit += count;
+        return true;
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= 0 && c < 0x80 && CLASSES[c] == DIGIT;
+    }
+
+    private static boolean isAlphaNumeric(int c) {
+        return c >= 0 && c < 0x80 && CLASSES[c] != 0;
+    }
+}
@@ -0,0 +1,44 @@
+package jlox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Bytecode of one function together with its constant pool and a line per byte for error reporting. */
+class Chunk {
+    byte[] code = new byte[64];
+    int[] lines = new int[64];
+    int count = 0;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> shared = new HashMap<>();
+    private Object[] constantArray;
+
+    void write(int b, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = (byte) b;
+        lines[count] = line;
+        ++count;
+    }
+
+    /* Identical numbers, strings and names share a constant, everything else gets its own entry. */
+    int addConstant(Object value) {
+        if (value instanceof Double || value instanceof String || value instanceof Symbol) {
+            Integer index = shared.get(value);
+            if (index != null) return index;
+            shared.put(value, constants.size());
+        }
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    Object[] constants() {
+        if (constantArray == null || constantArray.length != constants.size())
+            constantArray = constants.toArray();
+        return constantArray;
+    }
+}
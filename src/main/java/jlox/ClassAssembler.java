@@ -0,0 +1,350 @@
+package jlox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Just enough of a class file writer for the JIT: one public final class with methods and nothing else.
+ * It writes version 49 class files, those are verified by type inference and need no stack map frames.
+ */
+class ClassAssembler {
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int DCONST_0 = 0x0e;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int DSTORE = 0x39;
+    static final int ASTORE = 0x3a;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int DUP_X1 = 0x5a;
+    static final int DUP2 = 0x5c;
+    static final int DUP2_X1 = 0x5d;
+    static final int DUP2_X2 = 0x5e;
+    static final int SWAP = 0x5f;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6b;
+    static final int DDIV = 0x6f;
+    static final int DNEG = 0x77;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int GOTO = 0xa7;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETFIELD = 0xb4;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int ANEWARRAY = 0xbd;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final List<byte[]> methods = new ArrayList<>();
+
+    ClassAssembler(String name, String superName) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+    }
+
+    Code method(String name, String descriptor, int parameterSlots) {
+        return new Code(name, descriptor, parameterSlots);
+    }
+
+    byte[] toByteArray() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            int codeName = utf8("Code");
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            out.write(poolBytes.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method, 0, 6);
+                out.writeShort(1); // attributes: Code
+                out.writeShort(codeName);
+                out.write(method, 6, method.length - 6);
+            }
+            out.writeShort(0); // attributes
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    int classRef(String internalName) {
+        return constant("Class:" + internalName, out -> {
+            int name = utf8(internalName);
+            out.writeByte(7);
+            out.writeShort(name);
+        });
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        return constant(tag + ":" + owner + "." + name + descriptor, out -> {
+            int ownerIndex = classRef(owner);
+            int nameAndType = constant("NameAndType:" + name + descriptor, nt -> {
+                int nameIndex = utf8(name);
+                int descriptorIndex = utf8(descriptor);
+                nt.writeByte(12);
+                nt.writeShort(nameIndex);
+                nt.writeShort(descriptorIndex);
+            });
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private int integer(int value) {
+        return constant("Integer:" + value, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        });
+    }
+
+    /* A double takes two entries of the pool. */
+    private int doubleValue(double value) {
+        String key = "Double:" + Double.doubleToRawLongBits(value);
+        Integer index = poolIndex.get(key);
+        if (index != null) return index;
+        index = constant(key, out -> {
+            out.writeByte(6);
+            out.writeDouble(value);
+        });
+        ++poolCount;
+        return index;
+    }
+
+    private int utf8(String value) {
+        return constant("Utf8:" + value, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    /* Entries are written to the pool only after the ones they refer to. */
+    private int constant(String key, PoolWriter writer) {
+        Integer index = poolIndex.get(key);
+        if (index != null) return index;
+        try {
+            ByteArrayOutputStream entry = new ByteArrayOutputStream();
+            writer.write(new DataOutputStream(entry));
+            pool.write(entry.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        poolIndex.put(key, poolCount);
+        return poolCount++;
+    }
+
+    private interface PoolWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    static final class Label {
+        private int position = -1;
+        private final List<Integer> branches = new ArrayList<>();
+    }
+
+    /* Body of one method. The caller reports the stack effect of every instruction so max_stack comes out right. */
+    final class Code {
+        private final String name;
+        private final String descriptor;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final List<Label> labels = new ArrayList<>();
+        private int stack = 0;
+        private int maxStack = 0;
+        private int maxLocals;
+
+        private Code(String name, String descriptor, int parameterSlots) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxLocals = parameterSlots;
+        }
+
+        int newLocal() {
+            return maxLocals++;
+        }
+
+        void op(int opcode, int stackEffect) {
+            code.write(opcode);
+            adjust(stackEffect);
+        }
+
+        void load(int local) {
+            op(ALOAD, 1);
+            code.write(checkLocal(local));
+        }
+
+        void store(int local) {
+            op(ASTORE, -1);
+            code.write(checkLocal(local));
+        }
+
+        int newDoubleLocal() {
+            int local = maxLocals;
+            maxLocals += 2;
+            return local;
+        }
+
+        void loadDouble(int local) {
+            op(DLOAD, 2);
+            code.write(checkLocal(local + 1) - 1);
+        }
+
+        void storeDouble(int local) {
+            op(DSTORE, -2);
+            code.write(checkLocal(local + 1) - 1);
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value, 1);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH, 1);
+                code.write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH, 1);
+                writeShort(value);
+            } else {
+                op(LDC_W, 1);
+                writeShort(integer(value));
+            }
+        }
+
+        // Stack effects count slots, a double takes two.
+        void pushDouble(double value) {
+            if (Double.doubleToRawLongBits(value) == 0L || value == 1.0) {
+                op(DCONST_0 + (int) value, 2);
+            } else {
+                op(LDC2_W, 2);
+                writeShort(doubleValue(value));
+            }
+        }
+
+        void invokeStatic(String owner, String name, String descriptor, int stackEffect) {
+            op(INVOKESTATIC, stackEffect);
+            writeShort(methodRef(owner, name, descriptor));
+        }
+
+        void invokeSpecial(String owner, String name, String descriptor, int stackEffect) {
+            op(INVOKESPECIAL, stackEffect);
+            writeShort(methodRef(owner, name, descriptor));
+        }
+
+        void getField(String owner, String name, String descriptor) {
+            op(GETFIELD, 0);
+            writeShort(fieldRef(owner, name, descriptor));
+        }
+
+        void newArray(String elementType) {
+            op(ANEWARRAY, 0);
+            writeShort(classRef(elementType));
+        }
+
+        void jump(int opcode, Label target) {
+            target.branches.add(code.size());
+            op(opcode, opcode == GOTO ? 0 : -1);
+            writeShort(0);
+        }
+
+        void mark(Label label) {
+            label.position = code.size();
+        }
+
+        void end() {
+            byte[] patched = code.toByteArray();
+            if (patched.length > Short.MAX_VALUE)
+                throw new IllegalStateException("Method " + name + " is too large.");
+            for (Label label : labels) {
+                for (int branch : label.branches) {
+                    int offset = label.position - branch;
+                    patched[branch + 1] = (byte) (offset >> 8);
+                    patched[branch + 2] = (byte) offset;
+                }
+            }
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeShort(ACC_PUBLIC);
+                out.writeShort(utf8(name));
+                out.writeShort(utf8(descriptor));
+                out.writeInt(12 + patched.length);
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(patched.length);
+                out.write(patched);
+                out.writeShort(0); // exception table
+                out.writeShort(0); // attributes
+                methods.add(bytes.toByteArray());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        Label label() {
+            Label label = new Label();
+            labels.add(label);
+            return label;
+        }
+
+        private void adjust(int stackEffect) {
+            stack += stackEffect;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void writeShort(int value) {
+            code.write(value >> 8);
+            code.write(value);
+        }
+
+        private int checkLocal(int local) {
+            if (local > 0xff) throw new IllegalStateException("Method " + name + " has too many locals.");
+            return local;
+        }
+    }
+}
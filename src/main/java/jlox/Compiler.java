@@ -0,0 +1,558 @@
+package jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static jlox.OpCode.ADD;
+import static jlox.OpCode.CALL;
+import static jlox.OpCode.CLASS;
+import static jlox.OpCode.CLOSE_UPVALUE;
+import static jlox.OpCode.CLOSURE;
+import static jlox.OpCode.CONSTANT;
+import static jlox.OpCode.DEFINE_GLOBAL;
+import static jlox.OpCode.DIVIDE;
+import static jlox.OpCode.EQUAL;
+import static jlox.OpCode.FALSE;
+import static jlox.OpCode.GET_GLOBAL;
+import static jlox.OpCode.GET_LOCAL;
+import static jlox.OpCode.GET_PROPERTY;
+import static jlox.OpCode.GET_SUPER;
+import static jlox.OpCode.GET_UPVALUE;
+import static jlox.OpCode.GREATER;
+import static jlox.OpCode.GREATER_EQUAL;
+import static jlox.OpCode.INHERIT;
+import static jlox.OpCode.INVOKE;
+import static jlox.OpCode.JUMP;
+import static jlox.OpCode.JUMP_IF_FALSE;
+import static jlox.OpCode.LESS;
+import static jlox.OpCode.LESS_EQUAL;
+import static jlox.OpCode.LOOP;
+import static jlox.OpCode.METHOD;
+import static jlox.OpCode.MULTIPLY;
+import static jlox.OpCode.NEGATE;
+import static jlox.OpCode.NIL;
+import static jlox.OpCode.NOT;
+import static jlox.OpCode.NOT_EQUAL;
+import static jlox.OpCode.POP;
+import static jlox.OpCode.PRINT;
+import static jlox.OpCode.RETURN;
+import static jlox.OpCode.SET_GLOBAL;
+import static jlox.OpCode.SET_LOCAL;
+import static jlox.OpCode.SET_PROPERTY;
+import static jlox.OpCode.SET_UPVALUE;
+import static jlox.OpCode.SUBTRACT;
+import static jlox.OpCode.SUPER_INVOKE;
+import static jlox.OpCode.TRUE;
+import static jlox.TokenType.OR;
+
+/*
+ * Translates a resolved program into bytecode for the VM, one Compiler per function.
+ * Locals are stack slots, the ones captured by closures are promoted to upvalues when their scope ends.
+ * Globals are numbered by the VM the code is for.
+ */
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final int UINT8_COUNT = 256;
+
+    private final Compiler enclosing;
+    private final VM vm;
+    private final Reporter reporter;
+    private final FunctionType type;
+    private final VM.Prototype function;
+    private final List<Local> locals = new ArrayList<>();
+    private final List<Upvalue> upvalues = new ArrayList<>();
+    private int scopeDepth = 0;
+    private int stackDepth = 1;
+    private Token token;
+
+    private Compiler(Compiler enclosing, VM vm, Reporter reporter, FunctionType type, Token name) {
+        this.enclosing = enclosing;
+        this.vm = vm;
+        this.reporter = reporter;
+        this.type = type;
+        this.function = new VM.Prototype(name == null ? null : name.lexeme());
+        this.token = name;
+        // Slot 0 holds the function being called, or the receiver in methods.
+        boolean hasReceiver = type == FunctionType.METHOD || type == FunctionType.INITIALIZER;
+        locals.add(new Local(hasReceiver ? Symbol.THIS : null, 0));
+    }
+
+    static VM.Prototype compile(List<Stmt> statements, VM vm, Reporter reporter) {
+        Compiler compiler = new Compiler(null, vm, reporter, FunctionType.SCRIPT, null);
+        for (Stmt statement : statements) {
+            compiler.compile(statement);
+        }
+        return compiler.endFunction();
+    }
+
+    @Override public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override public Void visitClassStmt(Stmt.Class stmt) {
+        token = stmt.name;
+        emitOp(CLASS);
+        emitShort(identifierConstant(stmt.name.symbol()));
+        defineVariable(stmt.name);
+
+        if (stmt.superClass != null) {
+            compile(stmt.superClass);
+            beginScope();
+            addLocal(Symbol.SUPER);
+            namedVariable(stmt.name.symbol(), false);
+            token = stmt.superClass.name;
+            emitOp(INHERIT);
+        }
+
+        namedVariable(stmt.name.symbol(), false);
+        for (Stmt.Function method : stmt.methods) {
+            FunctionType declaration = FunctionType.METHOD;
+            if (method.name.symbol() == Symbol.INIT) declaration = FunctionType.INITIALIZER;
+            function(method, declaration);
+            token = method.name;
+            emitOp(METHOD);
+            emitShort(identifierConstant(method.name.symbol()));
+        }
+        emitOp(POP);
+
+        if (stmt.superClass != null) endScope();
+        return null;
+    }
+
+    @Override public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emitOp(POP);
+        return null;
+    }
+
+    @Override public Void visitFunctionStmt(Stmt.Function stmt) {
+        // A local function is declared before its body is compiled, so it can call itself.
+        if (scopeDepth > 0) {
+            addLocal(stmt.name.symbol());
+            function(stmt, FunctionType.FUNCTION);
+        } else {
+            function(stmt, FunctionType.FUNCTION);
+            token = stmt.name;
+            emitOp(DEFINE_GLOBAL);
+            emitShort(globalSlot(stmt.name.symbol()));
+        }
+        return null;
+    }
+
+    @Override public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition);
+        int thenJump = emitJump(JUMP_IF_FALSE);
+        emitOp(POP);
+        compile(stmt.thenBranch);
+        int elseJump = emitJump(JUMP);
+        patchJump(thenJump);
+        ++stackDepth; // the condition is still there when the then branch is skipped
+        emitOp(POP);
+        if (stmt.elseBranch != null)
+            compile(stmt.elseBranch);
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emitOp(PRINT);
+        return null;
+    }
+
+    @Override public Void visitReturnStmt(Stmt.Return stmt) {
+        token = stmt.keyword;
+        if (stmt.value == null) {
+            emitReturn();
+        } else {
+            compile(stmt.value);
+            emitOp(RETURN);
+        }
+        return null;
+    }
+
+    @Override public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null)
+            compile(stmt.initializer);
+        else
+            emitOp(NIL);
+        token = stmt.name;
+        defineVariable(stmt.name);
+        return null;
+    }
+
+    @Override public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = function.chunk.count;
+        compile(stmt.condition);
+        int exitJump = emitJump(JUMP_IF_FALSE);
+        emitOp(POP);
+        compile(stmt.body);
+        emitLoop(loopStart);
+        patchJump(exitJump);
+        ++stackDepth; // the condition is still there when the loop exits
+        emitOp(POP);
+        return null;
+    }
+
+    @Override public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        token = expr.name;
+        namedVariable(expr.name.symbol(), true);
+        return null;
+    }
+
+    @Override public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+        token = expr.operator;
+        switch (expr.operator.type()) {
+            case MINUS -> emitOp(SUBTRACT);
+            case SLASH -> emitOp(DIVIDE);
+            case STAR -> emitOp(MULTIPLY);
+            case PLUS -> emitOp(ADD);
+            case GREATER -> emitOp(GREATER);
+            case GREATER_EQUAL -> emitOp(GREATER_EQUAL);
+            case LESS -> emitOp(LESS);
+            case LESS_EQUAL -> emitOp(LESS_EQUAL);
+            case EQUAL_EQUAL -> emitOp(EQUAL);
+            case BANG_EQUAL -> emitOp(NOT_EQUAL);
+            default -> throw new CompilerException("Unexpected token type" + expr.operator.type().name());
+        }
+        return null;
+    }
+
+    @Override public Void visitCallExpr(Expr.Call expr) {
+        // Method calls skip creating the bound method.
+        if (expr.callee instanceof Expr.Get get) {
+            compile(get.object);
+            compileArguments(expr.arguments);
+            token = get.name;
+            emitOp(INVOKE);
+            emitShort(identifierConstant(get.name.symbol()));
+        } else if (expr.callee instanceof Expr.Super superExpr) {
+            token = superExpr.keyword;
+            namedVariable(Symbol.THIS, false);
+            compileArguments(expr.arguments);
+            token = superExpr.method;
+            namedVariable(Symbol.SUPER, false);
+            emitOp(SUPER_INVOKE);
+            emitShort(identifierConstant(superExpr.method.symbol()));
+        } else {
+            compile(expr.callee);
+            compileArguments(expr.arguments);
+            token = expr.paren;
+            emitOp(CALL);
+        }
+        token = expr.paren;
+        emit(expr.arguments.size());
+        stackDepth -= expr.arguments.size();
+        return null;
+    }
+
+    @Override public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        token = expr.name;
+        emitOp(GET_PROPERTY);
+        emitShort(identifierConstant(expr.name.symbol()));
+        return null;
+    }
+
+    @Override public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) emitOp(NIL);
+        else if (expr.value.equals(true)) emitOp(TRUE);
+        else if (expr.value.equals(false)) emitOp(FALSE);
+        else {
+            emitOp(CONSTANT);
+            emitShort(makeConstant(expr.value));
+        }
+        return null;
+    }
+
+    @Override public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+        if (expr.operator.type() == OR) {
+            int elseJump = emitJump(JUMP_IF_FALSE);
+            int endJump = emitJump(JUMP);
+            patchJump(elseJump);
+            emitOp(POP);
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(JUMP_IF_FALSE);
+            emitOp(POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        compile(expr.value);
+        token = expr.name;
+        emitOp(SET_PROPERTY);
+        emitShort(identifierConstant(expr.name.symbol()));
+        return null;
+    }
+
+    @Override public Void visitSuperExpr(Expr.Super expr) {
+        token = expr.keyword;
+        namedVariable(Symbol.THIS, false);
+        token = expr.method;
+        namedVariable(Symbol.SUPER, false);
+        emitOp(GET_SUPER);
+        emitShort(identifierConstant(expr.method.symbol()));
+        return null;
+    }
+
+    @Override public Void visitThisExpr(Expr.This expr) {
+        token = expr.keyword;
+        namedVariable(Symbol.THIS, false);
+        return null;
+    }
+
+    @Override public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        token = expr.operator;
+        switch (expr.operator.type()) {
+            case BANG -> emitOp(NOT);
+            case MINUS -> emitOp(NEGATE);
+            default -> throw new CompilerException("Unexpected token type" + expr.operator.type().name());
+        }
+        return null;
+    }
+
+    @Override public Void visitVariableExpr(Expr.Variable expr) {
+        token = expr.name;
+        namedVariable(expr.name.symbol(), false);
+        return null;
+    }
+
+    private void function(Stmt.Function stmt, FunctionType type) {
+        Compiler compiler = new Compiler(this, vm, reporter, type, stmt.name);
+        compiler.beginScope();
+        for (Token param : stmt.params) {
+            compiler.addLocal(param.symbol());
+        }
+        compiler.function.arity = stmt.params.size();
+        compiler.stackDepth += stmt.params.size();
+        for (Stmt statement : stmt.body) {
+            compiler.compile(statement);
+        }
+        VM.Prototype prototype = compiler.endFunction();
+
+        token = stmt.name;
+        emitOp(CLOSURE);
+        emitShort(makeConstant(prototype));
+        for (Upvalue upvalue : compiler.upvalues) {
+            emit(upvalue.isLocal() ? 1 : 0);
+            emit(upvalue.index());
+        }
+    }
+
+    private VM.Prototype endFunction() {
+        emitReturn();
+        function.upvalueCount = upvalues.size();
+        return function;
+    }
+
+    private void compileArguments(List<Expr> arguments) {
+        for (Expr argument : arguments) {
+            compile(argument);
+        }
+    }
+
+    private void namedVariable(Symbol name, boolean assign) {
+        int arg = resolveLocal(name);
+        if (arg != -1) {
+            emitOp(assign ? SET_LOCAL : GET_LOCAL);
+            emit(arg);
+        } else if ((arg = resolveUpvalue(name)) != -1) {
+            emitOp(assign ? SET_UPVALUE : GET_UPVALUE);
+            emit(arg);
+        } else {
+            emitOp(assign ? SET_GLOBAL : GET_GLOBAL);
+            emitShort(globalSlot(name));
+        }
+    }
+
+    private void defineVariable(Token name) {
+        if (scopeDepth > 0) {
+            addLocal(name.symbol());
+            return;
+        }
+        emitOp(DEFINE_GLOBAL);
+        emitShort(globalSlot(name.symbol()));
+    }
+
+    private void addLocal(Symbol name) {
+        if (locals.size() == UINT8_COUNT) {
+            error("Too many local variables in function.");
+            return;
+        }
+        locals.add(new Local(name, scopeDepth));
+    }
+
+    private int resolveLocal(Symbol name) {
+        for (int i = locals.size() - 1; i >= 0; i--) {
+            if (locals.get(i).name == name)
+                return i;
+        }
+        return -1;
+    }
+
+    private int resolveUpvalue(Symbol name) {
+        if (enclosing == null) return -1;
+
+        int local = enclosing.resolveLocal(name);
+        if (local != -1) {
+            enclosing.locals.get(local).isCaptured = true;
+            return addUpvalue(local, true);
+        }
+        int upvalue = enclosing.resolveUpvalue(name);
+        if (upvalue != -1)
+            return addUpvalue(upvalue, false);
+
+        return -1;
+    }
+
+    private int addUpvalue(int index, boolean isLocal) {
+        Upvalue upvalue = new Upvalue(index, isLocal);
+        int existing = upvalues.indexOf(upvalue);
+        if (existing != -1) return existing;
+
+        if (upvalues.size() == UINT8_COUNT) {
+            error("Too many closure variables in function.");
+            return 0;
+        }
+        upvalues.add(upvalue);
+        return upvalues.size() - 1;
+    }
+
+    private void beginScope() {
+        ++scopeDepth;
+    }
+
+    private void endScope() {
+        --scopeDepth;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > scopeDepth) {
+            emitOp(locals.get(locals.size() - 1).isCaptured ? CLOSE_UPVALUE : POP);
+            locals.remove(locals.size() - 1);
+        }
+    }
+
+    private void emitReturn() {
+        if (type == FunctionType.INITIALIZER) {
+            emitOp(GET_LOCAL);
+            emit(0);
+        } else {
+            emitOp(NIL);
+        }
+        emitOp(RETURN);
+    }
+
+    private int emitJump(byte instruction) {
+        emitOp(instruction);
+        emit(0xff);
+        emit(0xff);
+        return function.chunk.count - 2;
+    }
+
+    private void patchJump(int offset) {
+        int jump = function.chunk.count - offset - 2;
+        if (jump > 0xffff) error("Too much code to jump over.");
+
+        function.chunk.code[offset] = (byte) ((jump >> 8) & 0xff);
+        function.chunk.code[offset + 1] = (byte) (jump & 0xff);
+    }
+
+    private void emitLoop(int loopStart) {
+        emitOp(LOOP);
+        int offset = function.chunk.count - loopStart + 2;
+        if (offset > 0xffff) error("Loop body too large.");
+        emitShort(offset);
+    }
+
+    private int identifierConstant(Symbol name) {
+        return makeConstant(name);
+    }
+
+    private int globalSlot(Symbol name) {
+        int slot = vm.globalSlot(name);
+        if (slot > 0xffff) {
+            error("Too many global variables.");
+            return 0;
+        }
+        return slot;
+    }
+
+    private int makeConstant(Object value) {
+        int constant = function.chunk.addConstant(value);
+        if (constant > 0xffff) {
+            error("Too many constants in one chunk.");
+            return 0;
+        }
+        return constant;
+    }
+
+    private void emitOp(byte instruction) {
+        emit(instruction);
+        stackDepth += OpCode.stackEffect(instruction);
+        function.maxStack = Math.max(function.maxStack, stackDepth);
+    }
+
+    private void emit(int b) {
+        function.chunk.write(b, token == null ? 1 : token.line());
+    }
+
+    private void emitShort(int value) {
+        emit((value >> 8) & 0xff);
+        emit(value & 0xff);
+    }
+
+    private void error(String message) {
+        if (token == null) reporter.error(0, message);
+        else reporter.error(token, message);
+    }
+
+    private void compile(Stmt statement) {
+        statement.accept(this);
+    }
+
+    private void compile(Expr expression) {
+        expression.accept(this);
+    }
+
+    private static final class Local {
+        // Null for the unnamed slot 0 of functions.
+        final Symbol name;
+        final int depth;
+        boolean isCaptured = false;
+
+        Local(Symbol name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private record Upvalue(int index, boolean isLocal) {}
+
+    private enum FunctionType {
+        SCRIPT, FUNCTION, INITIALIZER, METHOD;
+    }
+
+    private static class CompilerException extends RuntimeException {
+        public CompilerException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package jlox;
+
+/* How a statement finished, telling the enclosing statements whether to go on. */
+enum Completion {
+    NORMAL,
+    // The value is left in the Interpreter until the function call picks it up.
+    RETURN,
+    // A call in tail position, left in the Interpreter for the calling LoxFunction to run in its place.
+    TAIL_CALL
+}
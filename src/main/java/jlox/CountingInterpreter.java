@@ -0,0 +1,26 @@
+package jlox;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/* Interpreter for runs with Coverage, counting each statement before it executes. */
+final class CountingInterpreter extends Interpreter {
+    private final Coverage coverage;
+
+    CountingInterpreter(Coverage coverage, Reporter reporter, Consumer<String> out) {
+        super(reporter, out);
+        this.coverage = coverage;
+        // Compiled code would run uncounted.
+        jit = false;
+    }
+
+    @Override void interpret(List<Stmt> statements) {
+        coverage.add(statements);
+        super.interpret(statements);
+    }
+
+    @Override Completion execute(Stmt statement) {
+        coverage.count(statement);
+        return super.execute(statement);
+    }
+}
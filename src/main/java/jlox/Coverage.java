@@ -0,0 +1,153 @@
+package jlox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/*
+ * Line coverage of a script, on with -Djlox.coverage=<file>. Every statement the interpreter executes counts one
+ * for the line of its first token, at exit the counts go to the file as an lcov report and the hottest lines to
+ * stderr. Only a CountingInterpreter counts, a run without the property never reaches any of this. The VM and the
+ * JIT would skip the counting, so a run with coverage stays in the interpreter and compiles nothing.
+ */
+final class Coverage {
+    private static final int HOTTEST = 10;
+
+    private final Path output;
+    // Lines holding a statement, counted or not.
+    private final BitSet lines = new BitSet();
+    // Line of each registered statement that has one, worked out once rather than on every execution.
+    private final Map<Stmt, Integer> statementLines = new IdentityHashMap<>();
+    private long[] counts = new long[0];
+
+    Coverage(Path output) {
+        this.output = output;
+    }
+
+    /* The report named by -Djlox.coverage, null when there is none. */
+    static Coverage fromProperty() {
+        String output = System.getProperty("jlox.coverage");
+        return output == null ? null : new Coverage(Path.of(output));
+    }
+
+    /* Registers the lines of the statements before they run, so the counts never need to grow while counting. */
+    void add(List<Stmt> statements) {
+        for (Stmt statement : statements) add(statement);
+        if (lines.length() > counts.length) counts = Arrays.copyOf(counts, lines.length());
+    }
+
+    private void add(Stmt statement) {
+        if (statement == null) return;
+        int line = line(statement);
+        if (line > 0) {
+            lines.set(line);
+            statementLines.put(statement, line);
+        }
+        if (statement instanceof Stmt.Block block) {
+            for (Stmt inner : block.statements) add(inner);
+        } else if (statement instanceof Stmt.Class klass) {
+            // Methods are not executed as statements, only their bodies are.
+            for (Stmt.Function method : klass.methods)
+                for (Stmt inner : method.body) add(inner);
+        } else if (statement instanceof Stmt.Function function) {
+            for (Stmt inner : function.body) add(inner);
+        } else if (statement instanceof Stmt.If ifStmt) {
+            add(ifStmt.thenBranch);
+            add(ifStmt.elseBranch);
+        } else if (statement instanceof Stmt.While whileStmt) {
+            add(whileStmt.body);
+        }
+    }
+
+    void count(Stmt statement) {
+        Integer line = statementLines.get(statement);
+        if (line != null) ++counts[line];
+    }
+
+    /* Writes the report for the script at source and prints its hottest lines. */
+    void report(Path source, PrintStream summary) {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(output, UTF_8))) {
+            lcov(source.toAbsolutePath().toString(), out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<String> text;
+        try {
+            text = Files.readAllLines(source, UTF_8);
+        } catch (IOException | UncheckedIOException e) {
+            text = List.of();
+        }
+        hottest(text, summary);
+    }
+
+    void lcov(String source, PrintWriter out) {
+        out.print("TN:\nSF:" + source + "\n");
+        int hit = 0;
+        for (int line = lines.nextSetBit(0); line >= 0; line = lines.nextSetBit(line + 1)) {
+            out.print("DA:" + line + "," + counts[line] + "\n");
+            if (counts[line] > 0) ++hit;
+        }
+        out.print("LF:" + lines.cardinality() + "\nLH:" + hit + "\nend_of_record\n");
+    }
+
+    /* Text holds the lines of the script, empty when they could not be read. */
+    void hottest(List<String> text, PrintStream out) {
+        int[] hottest = IntStream.range(0, counts.length)
+                .filter(line -> counts[line] > 0)
+                .boxed()
+                .sorted(Comparator.comparingLong((Integer line) -> counts[line]).reversed())
+                .limit(HOTTEST)
+                .mapToInt(Integer::intValue)
+                .toArray();
+        out.println("Hottest lines:");
+        for (int line : hottest) {
+            String source = line <= text.size() ? "  " + text.get(line - 1).strip() : "";
+            out.printf("%8d %12d%s%n", line, counts[line], source);
+        }
+    }
+
+    /* Line of the first token of the statement, 0 for an expression statement without tokens. */
+    static int line(Stmt statement) {
+        if (statement instanceof Stmt.If ifStmt) return ifStmt.keyword.line();
+        if (statement instanceof Stmt.Return returnStmt) return returnStmt.keyword.line();
+        if (statement instanceof Stmt.While whileStmt) return whileStmt.keyword.line();
+        if (statement instanceof Stmt.Print print) return print.keyword.line();
+        if (statement instanceof Stmt.Var var) return var.name.line();
+        if (statement instanceof Stmt.Expression expression) return line(expression.expression);
+        if (statement instanceof Stmt.Function function) return function.name.line();
+        if (statement instanceof Stmt.Class klass) return klass.name.line();
+        // Blocks have no line of their own, their statements count.
+        return 0;
+    }
+
+    private static int line(Expr expr) {
+        if (expr instanceof Expr.Variable variable) return variable.name.line();
+        if (expr instanceof Expr.Assign assign) return assign.name.line();
+        if (expr instanceof Expr.Call call) return or(line(call.callee), call.paren);
+        if (expr instanceof Expr.Get get) return or(line(get.object), get.name);
+        if (expr instanceof Expr.Set set) return or(line(set.object), set.name);
+        if (expr instanceof Expr.Binary binary) return or(line(binary.left), binary.operator);
+        if (expr instanceof Expr.Logical logical) return or(line(logical.left), logical.operator);
+        if (expr instanceof Expr.Unary unary) return unary.operator.line();
+        if (expr instanceof Expr.Grouping grouping) return line(grouping.expression);
+        if (expr instanceof Expr.This thisExpr) return thisExpr.keyword.line();
+        if (expr instanceof Expr.Super superExpr) return superExpr.keyword.line();
+        return 0;
+    }
+
+    private static int or(int line, Token token) {
+        return line > 0 ? line : token.line();
+    }
+}
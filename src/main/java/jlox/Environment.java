@@ -1,47 +1,94 @@
 package jlox;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 class Environment {
+    // Marks a slot whose value is the unboxed number at the same index of numbers.
+    private static final Object UNBOXED = new Object();
+
     final Environment enclosing;
 
-    private final Map<String, Object> values = new HashMap<>();
+    // Only the global environment is keyed by name, locals live in slots assigned by the Resolver.
+    private final Map<Symbol, Object> values;
+    private final Object[] slots;
+    private double[] numbers;
+    private int size = 0;
 
-    Environment() {this(null);}
+    Environment() {
+        this.enclosing = null;
+        this.values = new HashMap<>();
+        this.slots = null;
+    }
 
-    Environment(Environment enclosing) {this.enclosing = enclosing;}
+    /* The Resolver counts the locals of every scope, so the array never has to grow. */
+    Environment(Environment enclosing, int slots) {
+        this.enclosing = enclosing;
+        this.values = null;
+        this.slots = new Object[slots];
+    }
 
-    void define(String name, Object value) {
+    void define(Symbol name, Object value) {
         values.put(name, value);
     }
 
+    /* Slots are handed out in declaration order, the same order the Resolver numbers them. */
+    void define(Object value) {
+        slots[size++] = value;
+    }
+
+    void define(double value) {
+        unboxed()[size] = value;
+        slots[size++] = UNBOXED;
+    }
+
     public void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme())) {
-            values.put(name.lexeme(), value);
-            return;
-        }
-        if (enclosing != null) {
-            enclosing.assign(name, value);
+        if (values.containsKey(name.symbol())) {
+            values.put(name.symbol(), value);
             return;
         }
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
     }
 
-    public void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme(), value);
+    public void assignAt(int distance, int slot, Object value) {
+        ancestor(distance).slots[slot] = value;
+    }
+
+    void assignNumberAt(int distance, int slot, double value) {
+        Environment environment = ancestor(distance);
+        environment.unboxed()[slot] = value;
+        environment.slots[slot] = UNBOXED;
     }
 
     Object get(Token name) {
-        if (values.containsKey(name.lexeme()))
-            return values.get(name.lexeme());
-        if (enclosing != null)
-            return enclosing.get(name);
+        if (values.containsKey(name.symbol()))
+            return values.get(name.symbol());
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme() + "'.");
     }
 
-    public Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    public Object getAt(int distance, int slot) {
+        Environment environment = ancestor(distance);
+        Object value = environment.slots[slot];
+        return value == UNBOXED ? (Double) environment.numbers[slot] : value;
+    }
+
+    double getNumberAt(int distance, int slot) {
+        Environment environment = ancestor(distance);
+        Object value = environment.slots[slot];
+        if (value == UNBOXED) return environment.numbers[slot];
+        if (value instanceof Double d) return d;
+        throw new UnexpectedResult(value);
+    }
+
+    /* The globals by name, read only. */
+    Map<Symbol, Object> values() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    private double[] unboxed() {
+        if (numbers == null) numbers = new double[slots.length];
+        return numbers;
     }
 
     private Environment ancestor(int distance) {
@@ -0,0 +1,20 @@
+package jlox;
+
+/* Where the errors of compiling and running a script go, one call per error. */
+public interface ErrorSink {
+    /* What the jlox command does with them: a line or two of System.err each. */
+    ErrorSink STDERR = new ErrorSink() {
+        @Override public void compileError(int line, String where, String message) {
+            System.err.printf("[line %d] Error%s:%s\n", line, where, message);
+        }
+
+        @Override public void runtimeError(int line, String message) {
+            System.err.println(message + "\n[line " + line + "]");
+        }
+    };
+
+    /* Found scanning, parsing or resolving. Where quotes the token at fault, it is empty when there is none. */
+    void compileError(int line, String where, String message);
+
+    void runtimeError(int line, String message);
+}
@@ -0,0 +1,129 @@
+package jlox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/*
+ * Flight Recorder events of jlox, under Lox in JDK Mission Control next to the GC and JIT events of the same
+ * recording. Loading the first event class brings up the recorder, a good quarter of a second, so events are only
+ * made when the JVM starts with a recording or with -Djlox.jfr=true for recordings started later on. Otherwise
+ * ENABLED is a constant false and the JIT drops the events along with their branches. Without a recording taking
+ * them an event is a begin and commit that do nothing, and HotSpot drops the event object as well.
+ * jlox.Call only records calls that take at least its threshold: 20 ms unless the recording sets another, as in
+ * -XX:StartFlightRecording:+jlox.Call#threshold=5ms.
+ */
+final class Events {
+    static final boolean ENABLED = Boolean.getBoolean("jlox.jfr") || FlightRecorder.isInitialized();
+    // One instance allocation in SAMPLE is recorded, a power of two.
+    static final int SAMPLE = 1024;
+
+    private Events() {}
+
+    /* A started phase, null when jlox makes no events. */
+    static Phase phase(String name) {
+        if (!ENABLED) return null;
+        Phase phase = new Phase(name);
+        phase.begin();
+        return phase;
+    }
+
+    static void end(Phase phase) {
+        if (phase == null) return;
+        if (phase.scanner != null) phase.scanning = phase.scanner.nanos;
+        phase.commit();
+    }
+
+    @Name("jlox.Phase")
+    @Label("Phase")
+    @Category("Lox")
+    @Description("Parsing, resolving or running a script.")
+    @StackTrace(false)
+    static final class Phase extends Event {
+        @Label("Phase")
+        final String phase;
+
+        @Label("Scanning")
+        @Description("Part of a parse spent in the scanner, which the parser pulls tokens from as it goes.")
+        @Timespan
+        long scanning;
+
+        // Not a type events have, so not recorded.
+        private TimedTokens scanner;
+
+        Phase(String phase) {
+            this.phase = phase;
+        }
+
+        /* The tokens for the parse, timed when the phase is recorded. */
+        TokenSource scanned(TokenSource tokens) {
+            if (!isEnabled()) return tokens;
+            return scanner = new TimedTokens(tokens);
+        }
+    }
+
+    @Name("jlox.Call")
+    @Label("Slow Call")
+    @Category("Lox")
+    @Description("Call of a Lox function taking at least the threshold, tail calls it makes not included.")
+    @Threshold("20 ms")
+    @StackTrace(false)
+    static final class Call extends Event {
+        @Label("Function")
+        String function;
+
+        @Label("Line")
+        @Description("Line the function is declared on.")
+        int line;
+
+        static Call start() {
+            Call call = new Call();
+            call.begin();
+            return call;
+        }
+
+        void finish(Stmt.Function declaration) {
+            end();
+            if (!shouldCommit()) return;
+            function = declaration.name.lexeme();
+            line = declaration.name.line();
+            commit();
+        }
+    }
+
+    @Name("jlox.InstanceAllocation")
+    @Label("Instance Allocation")
+    @Category("Lox")
+    @Description("One in " + SAMPLE + " instances created by an interpreter.")
+    @StackTrace(false)
+    static final class Allocation extends Event {
+        @Label("Class")
+        final String className;
+
+        Allocation(String className) {
+            this.className = className;
+        }
+    }
+
+    private static final class TimedTokens implements TokenSource {
+        private final TokenSource tokens;
+        long nanos;
+
+        TimedTokens(TokenSource tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override public Token nextToken() {
+            long start = System.nanoTime();
+            Token token = tokens.nextToken();
+            nanos += System.nanoTime() - start;
+            return token;
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package jlox;
 
+import java.io.IOException;
 import java.util.List;
 
 abstract sealed class Expr permits Expr.Assign, Expr.Binary, Expr.Call, Expr.Get, Expr.Grouping, Expr.Literal, Expr.Logical, Expr.Set, Expr.Super, Expr.This, Expr.Unary, Expr.Variable {
 
     abstract <R> R accept(Visitor<R> visitor);
 
+    abstract void write(AstWriter out) throws IOException;
+
     interface Visitor<R> {
         R visitAssignExpr(Assign expr);
 
@@ -32,9 +35,30 @@ abstract sealed class Expr permits Expr.Assign, Expr.Binary, Expr.Call, Expr.Get
         R visitVariableExpr(Variable expr);
     }
 
+    static Expr read(AstReader in) throws IOException {
+        return switch (in.readByte()) {
+            case 0 -> null;
+            case 1 -> Assign.read(in);
+            case 2 -> Binary.read(in);
+            case 3 -> Call.read(in);
+            case 4 -> Get.read(in);
+            case 5 -> Grouping.read(in);
+            case 6 -> Literal.read(in);
+            case 7 -> Logical.read(in);
+            case 8 -> Set.read(in);
+            case 9 -> Super.read(in);
+            case 10 -> This.read(in);
+            case 11 -> Unary.read(in);
+            case 12 -> Variable.read(in);
+            default -> throw new IOException("Unknown Expr node.");
+        };
+    }
+
     static final class Assign extends Expr {
         final Token name;
         final Expr value;
+        int depth = -1;
+        int slot;
 
         Assign(Token name, Expr value) {
             this.name = name;
@@ -44,12 +68,28 @@ abstract sealed class Expr permits Expr.Assign, Expr.Binary, Expr.Call, Expr.Get
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitAssignExpr(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(1);
+            out.writeToken(name);
+            out.writeExpr(value);
+            out.writeInt(depth);
+            out.writeInt(slot);
+        }
+
+        static Assign read(AstReader in) throws IOException {
+            Assign node = new Assign(in.readToken(), Expr.read(in));
+            node.depth = in.readInt();
+            node.slot = in.readInt();
+            return node;
+        }
     }
 
     static final class Binary extends Expr {
         final Expr left;
         final Token operator;
         final Expr right;
+        Specialization specialization = Specialization.UNINITIALIZED;
 
         Binary(Expr left, Token operator, Expr right) {
             this.left = left;
@@ -60,6 +100,17 @@ abstract sealed class Expr permits Expr.Assign, Expr.Binary, Expr.Call, Expr.Get
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitBinaryExpr(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(2);
+            out.writeExpr(left);
+            out.writeToken(operator);
+            out.writeExpr(right);
+        }
+
+        static Binary read(AstReader in) throws IOException {
+            return new Binary(Expr.read(in), in.readToken(), Expr.read(in));
+        }
     }
 
     static final class Call extends Expr {
@@ -76,11 +127,24 @@ abstract sealed class Expr permits Expr.Assign, Expr.Binary, Expr.Call, Expr.Get
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitCallExpr(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(3);
+            out.writeExpr(callee);
+            out.writeToken(paren);
+            out.writeInt(arguments.size());
+            for (Expr element : arguments) out.writeExpr(element);
+        }
+
+        static Call read(AstReader in) throws IOException {
+            return new Call(Expr.read(in), in.readToken(), in.readList(Expr::read));
+        }
     }
 
     static final class Get extends Expr {
         final Expr object;
         final Token name;
+        PropertyCache cache = PropertyCache.EMPTY;
 
         Get(Expr object, Token name) {
             this.object = object;
@@ -90,6 +154,16 @@ abstract sealed class Expr permits Expr.Assign, Expr.Binary, Expr.Call, Expr.Get
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitGetExpr(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(4);
+            out.writeExpr(object);
+            out.writeToken(name);
+        }
+
+        static Get read(AstReader in) throws IOException {
+            return new Get(Expr.read(in), in.readToken());
+        }
     }
 
     static final class Grouping extends Expr {
@@ -102,6 +176,15 @@ abstract sealed class Expr permits Expr.Assign, Expr.Binary, Expr.Call, Expr.Get
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitGroupingExpr(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(5);
+            out.writeExpr(expression);
+        }
+
+        static Grouping read(AstReader in) throws IOException {
+            return new Grouping(Expr.read(in));
+        }
     }
 
     static final class Literal extends Expr {
@@ -114,12 +197,22 @@ abstract sealed class Expr permits Expr.Assign, Expr.Binary, Expr.Call, Expr.Get
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitLiteralExpr(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(6);
+            out.writeValue(value);
+        }
+
+        static Literal read(AstReader in) throws IOException {
+            return new Literal(in.readValue());
+        }
     }
 
     static final class Logical extends Expr {
         final Expr left;
         final Token operator;
         final Expr right;
+        Specialization specialization = Specialization.UNINITIALIZED;
 
         Logical(Expr left, Token operator, Expr right) {
             this.left = left;
@@ -130,12 +223,24 @@ abstract sealed class Expr permits Expr.Assign, Expr.Binary, Expr.Call, Expr.Get
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitLogicalExpr(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(7);
+            out.writeExpr(left);
+            out.writeToken(operator);
+            out.writeExpr(right);
+        }
+
+        static Logical read(AstReader in) throws IOException {
+            return new Logical(Expr.read(in), in.readToken(), Expr.read(in));
+        }
     }
 
     static final class Set extends Expr {
         final Expr object;
         final Token name;
         final Expr value;
+        PropertyCache cache = PropertyCache.EMPTY;
 
         Set(Expr object, Token name, Expr value) {
             this.object = object;
@@ -146,11 +251,23 @@ abstract sealed class Expr permits Expr.Assign, Expr.Binary, Expr.Call, Expr.Get
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitSetExpr(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(8);
+            out.writeExpr(object);
+            out.writeToken(name);
+            out.writeExpr(value);
+        }
+
+        static Set read(AstReader in) throws IOException {
+            return new Set(Expr.read(in), in.readToken(), Expr.read(in));
+        }
     }
 
     static final class Super extends Expr {
         final Token keyword;
         final Token method;
+        int depth = -1;
 
         Super(Token keyword, Token method) {
             this.keyword = keyword;
@@ -160,10 +277,25 @@ abstract sealed class Expr permits Expr.Assign, Expr.Binary, Expr.Call, Expr.Get
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitSuperExpr(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(9);
+            out.writeToken(keyword);
+            out.writeToken(method);
+            out.writeInt(depth);
+        }
+
+        static Super read(AstReader in) throws IOException {
+            Super node = new Super(in.readToken(), in.readToken());
+            node.depth = in.readInt();
+            return node;
+        }
     }
 
     static final class This extends Expr {
         final Token keyword;
+        int depth = -1;
+        int slot;
 
         This(Token keyword) {
             this.keyword = keyword;
@@ -172,11 +304,26 @@ abstract sealed class Expr permits Expr.Assign, Expr.Binary, Expr.Call, Expr.Get
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitThisExpr(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(10);
+            out.writeToken(keyword);
+            out.writeInt(depth);
+            out.writeInt(slot);
+        }
+
+        static This read(AstReader in) throws IOException {
+            This node = new This(in.readToken());
+            node.depth = in.readInt();
+            node.slot = in.readInt();
+            return node;
+        }
     }
 
     static final class Unary extends Expr {
         final Token operator;
         final Expr right;
+        Specialization specialization = Specialization.UNINITIALIZED;
 
         Unary(Token operator, Expr right) {
             this.operator = operator;
@@ -186,10 +333,22 @@ abstract sealed class Expr permits Expr.Assign, Expr.Binary, Expr.Call, Expr.Get
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitUnaryExpr(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(11);
+            out.writeToken(operator);
+            out.writeExpr(right);
+        }
+
+        static Unary read(AstReader in) throws IOException {
+            return new Unary(in.readToken(), Expr.read(in));
+        }
     }
 
     static final class Variable extends Expr {
         final Token name;
+        int depth = -1;
+        int slot;
 
         Variable(Token name) {
             this.name = name;
@@ -198,5 +357,19 @@ abstract sealed class Expr permits Expr.Assign, Expr.Binary, Expr.Call, Expr.Get
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitVariableExpr(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(12);
+            out.writeToken(name);
+            out.writeInt(depth);
+            out.writeInt(slot);
+        }
+
+        static Variable read(AstReader in) throws IOException {
+            Variable node = new Variable(in.readToken());
+            node.depth = in.readInt();
+            node.slot = in.readInt();
+            return node;
+        }
     }
 }
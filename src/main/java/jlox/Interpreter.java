@@ -1,23 +1,57 @@
 package jlox;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-
+import java.util.function.Consumer;
+
+import static jlox.Completion.NORMAL;
+import static jlox.Completion.RETURN;
+import static jlox.Completion.TAIL_CALL;
+import static jlox.Specialization.GENERIC;
+import static jlox.Specialization.NUMBER_NEGATE;
+import static jlox.Specialization.UNINITIALIZED;
 import static jlox.TokenType.OR;
 
-class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Completion> {
+    // Prints to System.out as it is at the time.
+    static final Consumer<String> STDOUT = line -> System.out.println(line);
 
     final Environment globals = new Environment();
+    private final Reporter reporter;
+    // Takes what print statements print, a line at a time.
+    private final Consumer<String> out;
     private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    // Value of the return statement that completed last.
+    private Object returnValue;
+    // Callee and arguments of the tail call that completed last.
+    private LoxCallable tailCallee;
+    private Object[] tailArguments;
+    // Lox functions being run, for the Profiler.
+    private final Profiler.Stack stack = Profiler.ENABLED ? Profiler.stack() : null;
+    // Whether hot functions go to the Jit, and after how many calls. Off with a threshold of 0.
+    boolean jit = Jit.THRESHOLD > 0;
+    int jitThreshold = Jit.THRESHOLD;
+    // What this Interpreter does, for the Statistics bean.
+    final Statistics.Counters statistics = Statistics.counters(this);
 
     Interpreter() {
-        globals.define("clock", new LoxCallable() {
+        this(new Reporter(ErrorSink.STDERR), STDOUT);
+    }
+
+    Interpreter(Reporter reporter, Consumer<String> out) {
+        this.reporter = reporter;
+        this.out = out;
+        globals.define(Symbol.CLOCK, new LoxCallable() {
             @Override public int arity() {return 0;}
 
-            @Override public Object call(Interpreter interpreter, List<Object> arguments) {
+            @Override public Object call(Interpreter interpreter, Object[] arguments) {
+                return call0(interpreter);
+            }
+
+            @Override public Object call0(Interpreter interpreter) {
                 return (double) System.currentTimeMillis() / 1000.0;
             }
 
@@ -26,16 +60,22 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     void interpret(List<Stmt> statements) {
+        if (Profiler.ENABLED) stack.start();
+        long start = System.nanoTime();
         try {
             for (Stmt statement : statements) {
                 execute(statement);
             }
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            ++statistics.runtimeErrors;
+            reporter.runtimeError(error);
+        } finally {
+            statistics.interpretNanos += System.nanoTime() - start;
+            if (Profiler.ENABLED) stack.stop();
         }
     }
 
-    @Override public Void visitClassStmt(Stmt.Class stmt) {
+    @Override public Completion visitClassStmt(Stmt.Class stmt) {
         Object superclass = null;
         if (stmt.superClass != null) {
             superclass = evaluate(stmt.superClass);
@@ -44,83 +84,109 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
         }
 
-        environment.define(stmt.name.lexeme(), null);
-
         if (stmt.superClass != null) {
-            environment = new Environment(environment);
-            environment.define("super", superclass);
+            environment = new Environment(environment, 1);
+            ++statistics.environmentAllocations;
+            environment.define(superclass);
         }
-        Map<String, LoxFunction> methods = new HashMap<>();
+        Map<Symbol, LoxFunction> methods = new HashMap<>();
         for (Stmt.Function method : stmt.methods) {
-            LoxFunction function = new LoxFunction(method, environment, method.name.lexeme().equals("init"));
-            methods.put(method.name.lexeme(), function);
+            LoxFunction function = new LoxFunction(method, environment, true, method.name.symbol() == Symbol.INIT);
+            methods.put(method.name.symbol(), function);
         }
 
-        LoxClass klass = new LoxClass(stmt.name.lexeme(), (LoxClass) superclass, methods);
+        LoxClass klass = new LoxClass(stmt.name.lexeme(), (LoxClass) superclass, methods, stmt.shape);
+        ++statistics.classDefinitions;
         if (superclass != null) environment = environment.enclosing;
-        environment.assign(stmt.name, klass);
-        return null;
+        declare(stmt.name, klass);
+        return NORMAL;
     }
 
-    @Override public Void visitExpressionStmt(Stmt.Expression stmt) {
+    @Override public Completion visitExpressionStmt(Stmt.Expression stmt) {
+        // The value of an assignment statement is not used, so a number can be stored without boxing it.
+        if (stmt.expression instanceof Expr.Assign assign && assign.depth >= 0 && producesNumber(assign.value)) {
+            try {
+                environment.assignNumberAt(assign.depth, assign.slot, evaluateNumber(assign.value));
+            } catch (UnexpectedResult result) {
+                environment.assignAt(assign.depth, assign.slot, result.value);
+            }
+            return NORMAL;
+        }
         evaluate(stmt.expression);
-        return null;
+        return NORMAL;
     }
 
-    @Override public Void visitPrintStmt(Stmt.Print stmt) {
-        Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
-        return null;
+    @Override public Completion visitPrintStmt(Stmt.Print stmt) {
+        print(evaluate(stmt.expression));
+        return NORMAL;
     }
 
-    @Override public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
-        return null;
+    void print(Object value) {
+        out.accept(stringify(value));
+    }
+
+    @Override public Completion visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.slots == 0) return execute(stmt.statements);
+        ++statistics.environmentAllocations;
+        return executeBlock(stmt.statements, new Environment(environment, stmt.slots));
     }
 
-    @Override public Void visitIfStmt(Stmt.If stmt) {
+    @Override public Completion visitIfStmt(Stmt.If stmt) {
         Object value = evaluate(stmt.condition);
         if (isTruthy(value))
-            execute(stmt.thenBranch);
+            return execute(stmt.thenBranch);
         else if (stmt.elseBranch != null)
-            execute(stmt.elseBranch);
+            return execute(stmt.elseBranch);
 
-        return null;
+        return NORMAL;
     }
 
-    @Override public Void visitWhileStmt(Stmt.While stmt) {
-        while (isTruthy(evaluate(stmt.condition)))
-            execute(stmt.body);
-        return null;
+    @Override public Completion visitWhileStmt(Stmt.While stmt) {
+        while (isTruthy(evaluate(stmt.condition))) {
+            Completion completion = execute(stmt.body);
+            if (completion != NORMAL) return completion;
+        }
+        return NORMAL;
     }
 
-    @Override public Void visitReturnStmt(Stmt.Return stmt) {
-        Object value = null;
+    @Override public Completion visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tailCall) {
+            tailCall((Expr.Call) stmt.value);
+            return TAIL_CALL;
+        }
+        returnValue = null;
         if (stmt.value != null)
-            value = evaluate(stmt.value);
+            returnValue = evaluate(stmt.value);
 
-        throw new Return(value);
+        return RETURN;
     }
 
-    @Override public Void visitVarStmt(Stmt.Var stmt) {
+    @Override public Completion visitVarStmt(Stmt.Var stmt) {
+        if (environment != globals && producesNumber(stmt.initializer)) {
+            try {
+                environment.define(evaluateNumber(stmt.initializer));
+            } catch (UnexpectedResult result) {
+                environment.define(result.value);
+            }
+            return NORMAL;
+        }
         Object value = null;
         if (stmt.initializer != null)
             value = evaluate(stmt.initializer);
-        environment.define(stmt.name.lexeme(), value);
-        return null;
+        declare(stmt.name, value);
+        return NORMAL;
     }
 
-    @Override public Void visitFunctionStmt(Stmt.Function stmt) {
-        LoxFunction loxFunction = new LoxFunction(stmt, environment, false);
-        environment.define(stmt.name.lexeme(), loxFunction);
-        return null;
+    @Override public Completion visitFunctionStmt(Stmt.Function stmt) {
+        LoxFunction loxFunction = new LoxFunction(stmt, environment, false, false);
+        declare(stmt.name, loxFunction);
+        return NORMAL;
     }
 
     @Override public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
-        Integer distance = locals.get(expr);
-        if (distance != null)
-            environment.assignAt(distance, expr.name, value);
+        if (expr.depth >= 0)
+            environment.assignAt(expr.depth, expr.slot, value);
         else
             globals.assign(expr.name, value);
 
@@ -129,6 +195,21 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override public Object visitLogicalExpr(Expr.Logical expr) {
         Object left = evaluate(expr.left);
+        switch (expr.specialization) {
+            case BOOLEAN_OR:
+                if (left instanceof Boolean b) return b ? left : evaluate(expr.right);
+                break;
+            case BOOLEAN_AND:
+                if (left instanceof Boolean b) return b ? evaluate(expr.right) : left;
+                break;
+            case GENERIC:
+                return logical(expr, left);
+        }
+        expr.specialization = expr.specialization == UNINITIALIZED ? Specialization.logical(expr.operator, left) : GENERIC;
+        return logical(expr, left);
+    }
+
+    private Object logical(Expr.Logical expr, Object left) {
         if (expr.operator.type() == OR) {
             if (isTruthy(left)) return left; // true OR right = true
         } else {
@@ -138,29 +219,103 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     @Override public Object visitBinaryExpr(Expr.Binary expr) {
-        Object left = evaluate(expr.left);
-        Object right = evaluate(expr.right);
+        // Only the operation this node specialized on is tried, a failed guard leaves the node generic.
+        switch (expr.specialization) {
+            case UNINITIALIZED: {
+                Object left = evaluate(expr.left);
+                Object right = evaluate(expr.right);
+                expr.specialization = Specialization.binary(expr.operator, left, right);
+                return binary(expr.operator, left, right);
+            }
+            case STRING_ADD: {
+                Object left = evaluate(expr.left);
+                Object right = evaluate(expr.right);
+                if (left instanceof CharSequence l && right instanceof CharSequence r) return Rope.concat(l, r);
+                return despecialize(expr, left, right);
+            }
+            case GENERIC:
+                return binary(expr.operator, evaluate(expr.left), evaluate(expr.right));
+            default:
+                if (!expr.specialization.producesNumber()) return compareNumbers(expr);
+                try {
+                    return arithmetic(expr);
+                } catch (UnexpectedResult result) {
+                    return result.value;
+                }
+        }
+    }
+
+    /* Operands are evaluated unboxed as long as they keep producing numbers. */
+    private double arithmetic(Expr.Binary expr) {
+        double left, right;
+        try {
+            left = evaluateNumber(expr.left);
+        } catch (UnexpectedResult result) {
+            return unbox(despecialize(expr, result.value, evaluate(expr.right)));
+        }
+        try {
+            right = evaluateNumber(expr.right);
+        } catch (UnexpectedResult result) {
+            return unbox(despecialize(expr, left, result.value));
+        }
+        return switch (expr.specialization) {
+            case NUMBER_ADD -> left + right;
+            case NUMBER_SUBTRACT -> left - right;
+            case NUMBER_MULTIPLY -> left * right;
+            case NUMBER_DIVIDE -> left / right;
+            default -> unbox(despecialize(expr, left, right));
+        };
+    }
+
+    private boolean compareNumbers(Expr.Binary expr) {
+        double left, right;
+        try {
+            left = evaluateNumber(expr.left);
+        } catch (UnexpectedResult result) {
+            return (Boolean) despecialize(expr, result.value, evaluate(expr.right));
+        }
+        try {
+            right = evaluateNumber(expr.right);
+        } catch (UnexpectedResult result) {
+            return (Boolean) despecialize(expr, left, result.value);
+        }
+        return switch (expr.specialization) {
+            case NUMBER_GREATER -> left > right;
+            case NUMBER_GREATER_EQUAL -> left >= right;
+            case NUMBER_LESS -> left < right;
+            case NUMBER_LESS_EQUAL -> left <= right;
+            case NUMBER_EQUAL -> Double.compare(left, right) == 0;
+            case NUMBER_NOT_EQUAL -> Double.compare(left, right) != 0;
+            default -> (Boolean) despecialize(expr, left, right);
+        };
+    }
+
+    private static Object despecialize(Expr.Binary expr, Object left, Object right) {
+        expr.specialization = GENERIC;
+        return binary(expr.operator, left, right);
+    }
 
-        return switch (expr.operator.type()) {
-            case MINUS -> requireNumber(expr.operator, left) - requireNumber(expr.operator, right);
-            case SLASH -> requireNumber(expr.operator, left) / requireNumber(expr.operator, right);
-            case STAR -> requireNumber(expr.operator, left) * requireNumber(expr.operator, right);
+    private static Object binary(Token operator, Object left, Object right) {
+        return switch (operator.type()) {
+            case MINUS -> requireNumber(operator, left) - requireNumber(operator, right);
+            case SLASH -> requireNumber(operator, left) / requireNumber(operator, right);
+            case STAR -> requireNumber(operator, left) * requireNumber(operator, right);
             case PLUS -> {
                 if (left instanceof Double l && right instanceof Double r)
                     yield l + r;
-                if (left instanceof String l && right instanceof String r)
-                    yield l + r;
-                throw new RuntimeError(expr.operator, "Operands must be two strings or two numbers.");
+                if (left instanceof CharSequence l && right instanceof CharSequence r)
+                    yield Rope.concat(l, r);
+                throw new RuntimeError(operator, "Operands must be two strings or two numbers.");
             }
 
-            case GREATER -> requireNumber(expr.operator, left) > requireNumber(expr.operator, right);
-            case GREATER_EQUAL -> requireNumber(expr.operator, left) >= requireNumber(expr.operator, right);
-            case LESS -> requireNumber(expr.operator, left) < requireNumber(expr.operator, right);
-            case LESS_EQUAL -> requireNumber(expr.operator, left) <= requireNumber(expr.operator, right);
+            case GREATER -> requireNumber(operator, left) > requireNumber(operator, right);
+            case GREATER_EQUAL -> requireNumber(operator, left) >= requireNumber(operator, right);
+            case LESS -> requireNumber(operator, left) < requireNumber(operator, right);
+            case LESS_EQUAL -> requireNumber(operator, left) <= requireNumber(operator, right);
 
-            case EQUAL_EQUAL -> Objects.equals(left, right);
-            case BANG_EQUAL -> !Objects.equals(left, right);
-            default -> throw new InterpreterException("Unexpected token type" + expr.operator.type().name());
+            case EQUAL_EQUAL -> isEqual(left, right);
+            case BANG_EQUAL -> !isEqual(left, right);
+            default -> throw new InterpreterException("Unexpected token type" + operator.type().name());
         };
     }
 
@@ -179,100 +334,332 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             throw new RuntimeError(expr.name, "Only instances have fields.");
 
         Object value = evaluate(expr.value);
-        loxInstance.set(expr.name, value);
+        PropertyCache.set(expr, loxInstance, value);
         return null;
     }
 
     @Override public Object visitSuperExpr(Expr.Super expr) {
-        int distance = locals.get(expr);
-
-        LoxClass superclass = (LoxClass) environment.getAt(distance, "super");
-        LoxInstance object = (LoxInstance) environment.getAt(distance - 1, "this");
+        return superMethod(expr).bind(superReceiver(expr));
+    }
 
-        LoxFunction method = superclass.findMethod(expr.method.lexeme());
+    // "super" is the only slot of its scope, right around the scope of the method with "this" in its first slot.
+    private LoxFunction superMethod(Expr.Super expr) {
+        LoxClass superclass = (LoxClass) environment.getAt(expr.depth, 0);
+        LoxFunction method = superclass.findMethod(expr.method.symbol());
         if (method == null)
             throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme() + "'");
-        return method.bind(object);
+        return method;
+    }
+
+    private LoxInstance superReceiver(Expr.Super expr) {
+        return (LoxInstance) environment.getAt(expr.depth - 1, 0);
     }
 
     @Override public Object visitThisExpr(Expr.This expr) {
-        return lookupVariable(expr.keyword, expr);
+        return lookupVariable(expr.keyword, expr.depth, expr.slot);
     }
 
     @Override public Object visitUnaryExpr(Expr.Unary expr) {
+        if (expr.specialization == NUMBER_NEGATE) return negate(expr);
         Object right = evaluate(expr.right);
+        switch (expr.specialization) {
+            case BOOLEAN_NOT:
+                if (right instanceof Boolean b) return !b;
+                break;
+            case GENERIC:
+                return unary(expr.operator, right);
+        }
+        expr.specialization = expr.specialization == UNINITIALIZED ? Specialization.unary(expr.operator, right) : GENERIC;
+        return unary(expr.operator, right);
+    }
+
+    private double negate(Expr.Unary expr) {
+        try {
+            return -evaluateNumber(expr.right);
+        } catch (UnexpectedResult result) {
+            expr.specialization = GENERIC;
+            return unbox(unary(expr.operator, result.value));
+        }
+    }
 
-        return switch (expr.operator.type()) {
+    private static Object unary(Token operator, Object right) {
+        return switch (operator.type()) {
             case BANG -> !isTruthy(right);
-            case MINUS -> -requireNumber(expr.operator, right);
-            default -> throw new InterpreterException("Unexpected token type" + expr.operator.type().name());
+            case MINUS -> -requireNumber(operator, right);
+            default -> throw new InterpreterException("Unexpected token type" + operator.type().name());
         };
     }
 
     @Override public Object visitVariableExpr(Expr.Variable expr) {
-        return lookupVariable(expr.name, expr);
+        return lookupVariable(expr.name, expr.depth, expr.slot);
     }
 
-    private Object lookupVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
-        if (distance != null)
-            return environment.getAt(distance, name.lexeme());
+    private Object lookupVariable(Token name, int depth, int slot) {
+        if (depth >= 0)
+            return environment.getAt(depth, slot);
         else
             return globals.get(name);
     }
 
     @Override public Object visitCallExpr(Expr.Call expr) {
-        Object callee = evaluate(expr.callee);
-        List<Object> arguments = expr.arguments.stream().map(this::evaluate).toList();
+        // Methods called right away are never bound, they get their receiver as the first argument.
+        if (expr.callee instanceof Expr.Get get) {
+            Object object = evaluate(get.object);
+            Object callee = callee(get, object);
+            if (callee instanceof LoxFunction method && method.isUnboundMethod())
+                return invoke(method, object, expr);
+            return call(callee, expr);
+        }
+        if (expr.callee instanceof Expr.Super superExpr)
+            return invoke(superMethod(superExpr), superReceiver(superExpr), expr);
+        return call(evaluate(expr.callee), expr);
+    }
+
+    /* Up to four arguments are passed one by one, more in an array. */
+    private Object call(Object callee, Expr.Call expr) {
+        List<Expr> arguments = expr.arguments;
+        switch (arguments.size()) {
+            case 0:
+                return callable(callee, 0, expr.paren).call0(this);
+            case 1: {
+                Object a = evaluate(arguments.get(0));
+                return callable(callee, 1, expr.paren).call1(this, a);
+            }
+            case 2: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                return callable(callee, 2, expr.paren).call2(this, a, b);
+            }
+            case 3: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                Object c = evaluate(arguments.get(2));
+                return callable(callee, 3, expr.paren).call3(this, a, b, c);
+            }
+            case 4: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                Object c = evaluate(arguments.get(2));
+                Object d = evaluate(arguments.get(3));
+                return callable(callee, 4, expr.paren).call4(this, a, b, c, d);
+            }
+            default: {
+                Object[] values = new Object[arguments.size()];
+                for (int i = 0; i < values.length; ++i)
+                    values[i] = evaluate(arguments.get(i));
+                return callable(callee, values.length, expr.paren).call(this, values);
+            }
+        }
+    }
+
+    private Object invoke(LoxFunction method, Object receiver, Expr.Call expr) {
+        List<Expr> arguments = expr.arguments;
+        switch (arguments.size()) {
+            case 0:
+                checkArity(method, 0, expr.paren);
+                return method.call1(this, receiver);
+            case 1: {
+                Object a = evaluate(arguments.get(0));
+                checkArity(method, 1, expr.paren);
+                return method.call2(this, receiver, a);
+            }
+            case 2: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                checkArity(method, 2, expr.paren);
+                return method.call3(this, receiver, a, b);
+            }
+            case 3: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                Object c = evaluate(arguments.get(2));
+                checkArity(method, 3, expr.paren);
+                return method.call4(this, receiver, a, b, c);
+            }
+            default: {
+                Object[] values = arguments(receiver, arguments);
+                checkArity(method, arguments.size(), expr.paren);
+                return method.call(this, values);
+            }
+        }
+    }
 
+    /* Evaluates a call in tail position like visitCallExpr does, but leaves the call itself to the trampoline. */
+    private void tailCall(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get get) {
+            Object object = evaluate(get.object);
+            Object callee = callee(get, object);
+            tailInvoke(callee, arguments(object, expr.arguments), expr.paren);
+        } else if (expr.callee instanceof Expr.Super superExpr) {
+            LoxFunction method = superMethod(superExpr);
+            tailInvoke(method, arguments(superReceiver(superExpr), expr.arguments), expr.paren);
+        } else {
+            Object callee = evaluate(expr.callee);
+            Object[] values = new Object[expr.arguments.size()];
+            for (int i = 0; i < values.length; ++i)
+                values[i] = evaluate(expr.arguments.get(i));
+            tailCall(callee, values, expr.paren);
+        }
+    }
+
+    private Object[] arguments(Object receiver, List<Expr> arguments) {
+        Object[] values = new Object[arguments.size() + 1];
+        values[0] = receiver;
+        for (int i = 1; i < values.length; ++i)
+            values[i] = evaluate(arguments.get(i - 1));
+        return values;
+    }
+
+    Object call(Object callee, Object[] arguments, Token paren) {
+        return callable(callee, arguments.length, paren).call(this, arguments);
+    }
+
+    /* For compiled code, which passes the receiver of a method call ahead of the arguments. */
+    Object invoke(Object callee, Object[] arguments, Token paren) {
+        if (callee instanceof LoxFunction method && method.isUnboundMethod()) {
+            checkArity(method, arguments.length - 1, paren);
+            return method.call(this, arguments);
+        }
+        return call(callee, Arrays.copyOfRange(arguments, 1, arguments.length), paren);
+    }
+
+    /* The tail call counterparts of call and invoke return TAIL_CALL in place of the result. */
+
+    Object tailCall(Object callee, Object[] arguments, Token paren) {
+        tailCallee = callable(callee, arguments.length, paren);
+        tailArguments = arguments;
+        return TAIL_CALL;
+    }
+
+    Object tailInvoke(Object callee, Object[] arguments, Token paren) {
+        if (callee instanceof LoxFunction method && method.isUnboundMethod()) {
+            checkArity(method, arguments.length - 1, paren);
+            tailCallee = method;
+            tailArguments = arguments;
+            return TAIL_CALL;
+        }
+        return tailCall(callee, Arrays.copyOfRange(arguments, 1, arguments.length), paren);
+    }
+
+    private LoxCallable callable(Object callee, int arguments, Token paren) {
         if (!(callee instanceof LoxCallable function))
-            throw new RuntimeError(expr.paren, "Can only call functions and classes.");
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        checkArity(function, arguments, paren);
+        return function;
+    }
 
-        if (arguments.size() != function.arity())
-            throw new RuntimeError(expr.paren,
-                    "Expected " + function.arity() + " arguments, but got " + arguments.size() + ".");
+    /* Every call passes here right before it is made, so this is where the Profiler learns its line. */
+    private void checkArity(LoxCallable function, int arguments, Token paren) {
+        if (arguments != function.arity())
+            throw new RuntimeError(paren,
+                    "Expected " + function.arity() + " arguments, but got " + arguments + ".");
+        if (Profiler.ENABLED) stack.callAt(paren.line());
+    }
 
-        return function.call(this, arguments);
+    static Object callee(Expr.Get expr, Object object) {
+        if (object instanceof LoxInstance loxInstance)
+            return PropertyCache.callee(expr, loxInstance);
+        throw new RuntimeError(expr.name, "Only instances have properties.");
     }
 
     @Override public Object visitGetExpr(Expr.Get expr) {
         Object object = evaluate(expr.object);
         if (object instanceof LoxInstance loxInstance)
-            return loxInstance.get(expr.name);
+            return PropertyCache.get(expr, loxInstance);
         throw new RuntimeError(expr.name, "Only instances have properties.");
     }
 
-    void executeBlock(List<Stmt> statements, Environment environment) {
+    Completion executeBlock(List<Stmt> statements, Environment environment) {
         Environment previous = this.environment;
         try {
             this.environment = environment;
-            for (Stmt statement : statements) {
-                execute(statement);
-            }
+            return execute(statements);
         } finally {
             this.environment = previous;
         }
     }
 
-    void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    Object returnValue() {
+        return returnValue;
+    }
+
+    Profiler.Stack stack() {
+        return stack;
+    }
+
+    LoxCallable tailCallee() {
+        return tailCallee;
+    }
+
+    Object[] tailArguments() {
+        return tailArguments;
     }
 
-    private boolean isTruthy(Object object) {
+    private void declare(Token name, Object value) {
+        if (environment == globals)
+            globals.define(name.symbol(), value);
+        else
+            environment.define(value);
+    }
+
+    // A String does not know it can equal a Rope, so a rope has to be asked.
+    static boolean isEqual(Object a, Object b) {
+        if (b instanceof Rope) return b.equals(a);
+        return Objects.equals(a, b);
+    }
+
+    static boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean bool) return bool;
         return true;
     }
 
-    private void execute(Stmt statement) {
-        statement.accept(this);
+    /* Every statement runs through here, a CountingInterpreter counts it on the way. */
+    Completion execute(Stmt statement) {
+        return statement.accept(this);
+    }
+
+    /* Stops at the first statement that does not complete normally. */
+    private Completion execute(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            Completion completion = execute(statement);
+            if (completion != NORMAL) return completion;
+        }
+        return NORMAL;
     }
 
     private Object evaluate(Expr expression) {
         return expression.accept(this);
     }
 
-    private static String stringify(Object object) {
+    /*
+     * Evaluates an expression to a number without boxing it where the nodes allow that.
+     * Any other value is handed back in an UnexpectedResult.
+     */
+    private double evaluateNumber(Expr expression) {
+        if (expression instanceof Expr.Binary binary && binary.specialization.producesNumber())
+            return arithmetic(binary);
+        if (expression instanceof Expr.Variable variable && variable.depth >= 0)
+            return environment.getNumberAt(variable.depth, variable.slot);
+        if (expression instanceof Expr.Unary unary && unary.specialization == NUMBER_NEGATE)
+            return negate(unary);
+        if (expression instanceof Expr.Grouping grouping)
+            return evaluateNumber(grouping.expression);
+        return unbox(evaluate(expression));
+    }
+
+    private static boolean producesNumber(Expr expression) {
+        if (expression instanceof Expr.Binary binary) return binary.specialization.producesNumber();
+        if (expression instanceof Expr.Unary unary) return unary.specialization.producesNumber();
+        return false;
+    }
+
+    private static double unbox(Object value) {
+        if (value instanceof Double d) return d;
+        throw new UnexpectedResult(value);
+    }
+
+    static String stringify(Object object) {
         if (object == null) return "nil";
         if (object instanceof Double d) {
             var text = object.toString();
@@ -283,7 +670,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return object.toString();
     }
 
-    private static Double requireNumber(Token operator, Object operand) {
+    static Double requireNumber(Token operator, Object operand) {
         if (operand instanceof Double d) return d;
         throw new RuntimeError(operator, "Operand must me a number.");
     }
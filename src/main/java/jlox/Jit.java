@@ -0,0 +1,730 @@
+package jlox;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static jlox.ClassAssembler.AALOAD;
+import static jlox.ClassAssembler.AASTORE;
+import static jlox.ClassAssembler.ACONST_NULL;
+import static jlox.ClassAssembler.ARETURN;
+import static jlox.ClassAssembler.DADD;
+import static jlox.ClassAssembler.DCMPG;
+import static jlox.ClassAssembler.DCMPL;
+import static jlox.ClassAssembler.DDIV;
+import static jlox.ClassAssembler.DMUL;
+import static jlox.ClassAssembler.DNEG;
+import static jlox.ClassAssembler.DSUB;
+import static jlox.ClassAssembler.DUP;
+import static jlox.ClassAssembler.DUP2;
+import static jlox.ClassAssembler.DUP2_X1;
+import static jlox.ClassAssembler.DUP2_X2;
+import static jlox.ClassAssembler.DUP_X1;
+import static jlox.ClassAssembler.GOTO;
+import static jlox.ClassAssembler.IFEQ;
+import static jlox.ClassAssembler.IFGE;
+import static jlox.ClassAssembler.IFGT;
+import static jlox.ClassAssembler.IFLE;
+import static jlox.ClassAssembler.IFLT;
+import static jlox.ClassAssembler.IFNE;
+import static jlox.ClassAssembler.POP;
+import static jlox.ClassAssembler.POP2;
+import static jlox.ClassAssembler.RETURN;
+import static jlox.ClassAssembler.SWAP;
+import static jlox.TokenType.BANG;
+import static jlox.TokenType.MINUS;
+import static jlox.TokenType.OR;
+
+/*
+ * Compiles the body of a hot function to a JVM class, HotSpot then takes it the rest of the way to machine code.
+ * Locals of the function become JVM locals, everything else is a call to a static helper in JitRuntime.
+ * Functions declaring functions or classes, or using super, are not compiled and stay interpreted.
+ * Arithmetic and comparisons run on unboxed doubles, and so do the variables of the function that only ever hold
+ * numbers, in double locals. Parameters, arguments and return values are boxed, nothing says they are numbers, so a
+ * call-heavy function like fib gains far less than a loop doing arithmetic.
+ * Each function is a hidden class, unloaded along with the syntax tree holding its JitFunction.
+ */
+final class Jit implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    // Calls after which a function is compiled, where the Interpreter running it says nothing else.
+    static final int THRESHOLD = Integer.getInteger("jlox.jit.threshold", 1000);
+
+    private static final String BASE = "jlox/JitFunction";
+    private static final String RUNTIME = "jlox/JitRuntime";
+    private static final String OBJECT = "Ljava/lang/Object;";
+    private static final String OBJECTS = "[Ljava/lang/Object;";
+    private static final String INVOKE = "(" + OBJECT + OBJECT + OBJECTS + ")" + OBJECT;
+
+    // JVM locals of invoke, the locals of the function follow.
+    private static final int INTERPRETER = 1;
+    private static final int CLOSURE = 2;
+    private static final int ARGUMENTS = 3;
+    private static final int CONSTANTS = 4;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Stmt.Function function;
+    private final boolean isMethod;
+    private final String className;
+    private final ClassAssembler assembler;
+    private final ClassAssembler.Code code;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new IdentityHashMap<>();
+    // JVM local of each slot, per scope of the function.
+    private final List<List<Local>> scopes = new ArrayList<>();
+    private final Variables variables;
+
+    private Jit(Stmt.Function function, boolean isMethod) {
+        this.function = function;
+        this.isMethod = isMethod;
+        // Hidden classes have to be in the package of the lookup, the JVM makes each name unique.
+        this.className = "jlox/Jit$" + function.name.lexeme();
+        this.assembler = new ClassAssembler(className, BASE);
+        this.code = assembler.method("invoke", INVOKE, CONSTANTS + 1);
+        this.variables = new Variables(function, isMethod);
+    }
+
+    /* Null when the function cannot be compiled, or the JVM rejects what came out. */
+    static JitFunction compile(Stmt.Function function, boolean isMethod) {
+        try {
+            return new Jit(function, isMethod).generate();
+        } catch (Unsupported | IllegalStateException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private JitFunction generate() {
+        ClassAssembler.Code init = assembler.method("<init>", "(" + OBJECTS + ")V", 2);
+        init.load(0);
+        init.load(1);
+        init.invokeSpecial(BASE, "<init>", "(" + OBJECTS + ")V", -2);
+        init.op(RETURN, 0);
+        init.end();
+
+        code.load(0);
+        code.getField(BASE, "constants", OBJECTS);
+        code.store(CONSTANTS);
+        variables.findNumbers(this::isNumber);
+        scopes.add(new ArrayList<>());
+        // A method's receiver comes first, in the slot of this.
+        int slots = function.params.size() + (isMethod ? 1 : 0);
+        for (int i = 0; i < slots; ++i) {
+            code.load(ARGUMENTS);
+            code.pushInt(i);
+            code.op(AALOAD, -1);
+            define();
+        }
+        compile(function.body);
+        code.op(ACONST_NULL, 1);
+        code.op(ARETURN, -1);
+        code.end();
+
+        byte[] bytes = assembler.toByteArray();
+        try {
+            Class<?> compiled = LOOKUP.defineHiddenClass(bytes, true).lookupClass();
+            return (JitFunction) compiled.getConstructor(Object[].class).newInstance((Object) constants.toArray());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override public Void visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.slots == 0) {
+            compile(stmt.statements);
+            return null;
+        }
+        scopes.add(new ArrayList<>());
+        compile(stmt.statements);
+        scopes.remove(scopes.size() - 1);
+        return null;
+    }
+
+    @Override public Void visitClassStmt(Stmt.Class stmt) {
+        throw new Unsupported();
+    }
+
+    @Override public Void visitExpressionStmt(Stmt.Expression stmt) {
+        if (stmt.expression instanceof Expr.Assign assign && isNumber(assign)) {
+            number(assign.value);
+            code.storeDouble(local(assign.depth, assign.slot).index());
+            return null;
+        }
+        compile(stmt.expression);
+        code.op(POP, -1);
+        return null;
+    }
+
+    @Override public Void visitFunctionStmt(Stmt.Function stmt) {
+        throw new Unsupported();
+    }
+
+    @Override public Void visitIfStmt(Stmt.If stmt) {
+        ClassAssembler.Label elseBranch = code.label();
+        ClassAssembler.Label end = code.label();
+        condition(stmt.condition, elseBranch);
+        compile(stmt.thenBranch);
+        code.jump(GOTO, end);
+        code.mark(elseBranch);
+        if (stmt.elseBranch != null) compile(stmt.elseBranch);
+        code.mark(end);
+        return null;
+    }
+
+    @Override public Void visitPrintStmt(Stmt.Print stmt) {
+        code.load(INTERPRETER);
+        compile(stmt.expression);
+        code.invokeStatic(RUNTIME, "print", "(" + OBJECT + OBJECT + ")V", -2);
+        return null;
+    }
+
+    @Override public Void visitReturnStmt(Stmt.Return stmt) {
+        // A tail call is handed back to LoxFunction, which makes it once this frame is gone.
+        if (stmt.tailCall)
+            call((Expr.Call) stmt.value, "tailCall", "tailInvoke");
+        else if (stmt.value != null)
+            compile(stmt.value);
+        else
+            code.op(ACONST_NULL, 1);
+        code.op(ARETURN, -1);
+        return null;
+    }
+
+    @Override public Void visitVarStmt(Stmt.Var stmt) {
+        if (variables.numbers.contains(stmt)) {
+            number(stmt.initializer);
+            int local = code.newDoubleLocal();
+            scopes.get(scopes.size() - 1).add(new Local(local, true));
+            code.storeDouble(local);
+            return null;
+        }
+        if (stmt.initializer != null)
+            compile(stmt.initializer);
+        else
+            code.op(ACONST_NULL, 1);
+        define();
+        return null;
+    }
+
+    @Override public Void visitWhileStmt(Stmt.While stmt) {
+        ClassAssembler.Label start = code.label();
+        ClassAssembler.Label end = code.label();
+        code.mark(start);
+        condition(stmt.condition, end);
+        compile(stmt.body);
+        code.jump(GOTO, start);
+        code.mark(end);
+        return null;
+    }
+
+    @Override public Void visitAssignExpr(Expr.Assign expr) {
+        if (expr.depth < 0) {
+            code.load(INTERPRETER);
+            constant(expr.name);
+            compile(expr.value);
+            invoke("assignGlobal", 3);
+        } else if (isNumber(expr)) {
+            number(expr);
+            box();
+        } else if (expr.depth < scopes.size()) {
+            compile(expr.value);
+            code.op(DUP, 1);
+            code.store(local(expr.depth, expr.slot).index());
+        } else {
+            code.load(CLOSURE);
+            code.pushInt(expr.depth - scopes.size());
+            code.pushInt(expr.slot);
+            compile(expr.value);
+            code.invokeStatic(RUNTIME, "assignAt", "(" + OBJECT + "II" + OBJECT + ")" + OBJECT, -3);
+        }
+        return null;
+    }
+
+    @Override public Void visitBinaryExpr(Expr.Binary expr) {
+        if (isNumber(expr)) {
+            number(expr);
+            box();
+            return null;
+        }
+        compile(expr.left);
+        compile(expr.right);
+        switch (expr.operator.type()) {
+            case EQUAL_EQUAL -> invoke("equal", 2);
+            case BANG_EQUAL -> invoke("notEqual", 2);
+            default -> {
+                constant(expr.operator);
+                invoke(switch (expr.operator.type()) {
+                    case PLUS -> "add";
+                    case GREATER -> "greater";
+                    case GREATER_EQUAL -> "greaterEqual";
+                    case LESS -> "less";
+                    case LESS_EQUAL -> "lessEqual";
+                    default -> throw new Unsupported();
+                }, 3);
+            }
+        }
+        return null;
+    }
+
+    @Override public Void visitCallExpr(Expr.Call expr) {
+        call(expr, "call", "invoke");
+        return null;
+    }
+
+    private void call(Expr.Call expr, String call, String invoke) {
+        code.load(INTERPRETER);
+        String descriptor = "(" + OBJECT + OBJECT + OBJECTS + OBJECT + ")" + OBJECT;
+        if (expr.callee instanceof Expr.Get get) {
+            // The receiver goes first in the argument array, as an unbound method wants it.
+            compile(get.object);
+            code.pushInt(expr.arguments.size() + 1);
+            code.newArray("java/lang/Object");
+            code.op(DUP_X1, 1);
+            code.op(SWAP, 0);
+            code.pushInt(0);
+            code.op(SWAP, 0);
+            code.op(AASTORE, -3);
+            code.op(DUP, 1);
+            code.pushInt(0);
+            code.op(AALOAD, -1);
+            constant(get);
+            invoke("callee", 2);
+            code.op(SWAP, 0);
+            arguments(expr.arguments, 1);
+            constant(expr.paren);
+            code.invokeStatic(RUNTIME, invoke, descriptor, -3);
+            return;
+        }
+        compile(expr.callee);
+        code.pushInt(expr.arguments.size());
+        code.newArray("java/lang/Object");
+        arguments(expr.arguments, 0);
+        constant(expr.paren);
+        code.invokeStatic(RUNTIME, call, descriptor, -3);
+    }
+
+    // Stores the arguments into the array on top of the stack, starting at index first.
+    private void arguments(List<Expr> arguments, int first) {
+        for (int i = 0; i < arguments.size(); ++i) {
+            code.op(DUP, 1);
+            code.pushInt(first + i);
+            compile(arguments.get(i));
+            code.op(AASTORE, -3);
+        }
+    }
+
+    @Override public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        constant(expr);
+        invoke("get", 2);
+        return null;
+    }
+
+    @Override public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null)
+            code.op(ACONST_NULL, 1);
+        else
+            constant(expr.value);
+        return null;
+    }
+
+    @Override public Void visitLogicalExpr(Expr.Logical expr) {
+        ClassAssembler.Label end = code.label();
+        compile(expr.left);
+        code.op(DUP, 1);
+        code.invokeStatic(RUNTIME, "isTruthy", "(" + OBJECT + ")Z", 0);
+        code.jump(expr.operator.type() == OR ? IFNE : IFEQ, end);
+        code.op(POP, -1);
+        compile(expr.right);
+        code.mark(end);
+        return null;
+    }
+
+    @Override public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        constant(expr.name);
+        invoke("instance", 2);
+        constant(expr);
+        compile(expr.value);
+        invoke("set", 3);
+        return null;
+    }
+
+    @Override public Void visitSuperExpr(Expr.Super expr) {
+        throw new Unsupported();
+    }
+
+    @Override public Void visitThisExpr(Expr.This expr) {
+        load(expr.depth, expr.slot);
+        return null;
+    }
+
+    @Override public Void visitUnaryExpr(Expr.Unary expr) {
+        if (isNumber(expr)) {
+            number(expr);
+            box();
+            return null;
+        }
+        compile(expr.right);
+        if (expr.operator.type() != BANG) throw new Unsupported();
+        invoke("not", 1);
+        return null;
+    }
+
+    @Override public Void visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth < 0) {
+            code.load(INTERPRETER);
+            constant(expr.name);
+            invoke("global", 2);
+        } else {
+            load(expr.depth, expr.slot);
+        }
+        return null;
+    }
+
+    // Locals of the function are JVM locals, those of enclosing functions are in the closure.
+    private void load(int depth, int slot) {
+        if (depth < scopes.size()) {
+            Local local = local(depth, slot);
+            if (local.number()) {
+                code.loadDouble(local.index());
+                box();
+            } else {
+                code.load(local.index());
+            }
+        } else {
+            code.load(CLOSURE);
+            code.pushInt(depth - scopes.size());
+            code.pushInt(slot);
+            code.invokeStatic(RUNTIME, "getAt", "(" + OBJECT + "II)" + OBJECT, -2);
+        }
+    }
+
+    private void compile(List<Stmt> statements) {
+        for (Stmt statement : statements) compile(statement);
+    }
+
+    private void compile(Stmt statement) {
+        statement.accept(this);
+    }
+
+    private void compile(Expr expression) {
+        expression.accept(this);
+    }
+
+    private void condition(Expr condition, ClassAssembler.Label otherwise) {
+        if (condition instanceof Expr.Binary binary) {
+            // As javac compiles them: a comparison with NaN is false, so it takes the jump.
+            switch (binary.operator.type()) {
+                case LESS -> compare(binary, DCMPG, IFGE, otherwise);
+                case LESS_EQUAL -> compare(binary, DCMPG, IFGT, otherwise);
+                case GREATER -> compare(binary, DCMPL, IFLE, otherwise);
+                case GREATER_EQUAL -> compare(binary, DCMPL, IFLT, otherwise);
+                default -> {}
+            }
+            if (isComparison(binary)) return;
+        }
+        compile(condition);
+        code.invokeStatic(RUNTIME, "isTruthy", "(" + OBJECT + ")Z", 0);
+        code.jump(IFEQ, otherwise);
+    }
+
+    private void compare(Expr.Binary comparison, int compare, int jump, ClassAssembler.Label otherwise) {
+        operands(comparison);
+        code.op(compare, -3);
+        code.jump(jump, otherwise);
+    }
+
+    private static boolean isComparison(Expr.Binary expr) {
+        return switch (expr.operator.type()) {
+            case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL -> true;
+            default -> false;
+        };
+    }
+
+    /* Expressions that produce a number or fail, which number compiles to an unboxed double. */
+    private boolean isNumber(Expr expr) {
+        if (expr instanceof Expr.Literal literal) return literal.value instanceof Double;
+        if (expr instanceof Expr.Variable || expr instanceof Expr.Assign)
+            return variables.numbers.contains(variables.targets.get(expr));
+        if (expr instanceof Expr.Grouping grouping) return isNumber(grouping.expression);
+        if (expr instanceof Expr.Unary unary) return unary.operator.type() == MINUS;
+        if (expr instanceof Expr.Binary binary) {
+            return switch (binary.operator.type()) {
+                case MINUS, STAR, SLASH -> true;
+                case PLUS -> isNumber(binary.left) && isNumber(binary.right);
+                default -> false;
+            };
+        }
+        return false;
+    }
+
+    private void number(Expr expr) {
+        if (expr instanceof Expr.Literal literal) {
+            code.pushDouble((Double) literal.value);
+        } else if (expr instanceof Expr.Grouping grouping) {
+            number(grouping.expression);
+        } else if (expr instanceof Expr.Variable variable) {
+            code.loadDouble(local(variable.depth, variable.slot).index());
+        } else if (expr instanceof Expr.Assign assign) {
+            number(assign.value);
+            code.op(DUP2, 2);
+            code.storeDouble(local(assign.depth, assign.slot).index());
+        } else if (expr instanceof Expr.Unary unary) {
+            operand(unary.right, unary.operator);
+            code.op(DNEG, 0);
+        } else {
+            Expr.Binary binary = (Expr.Binary) expr;
+            operands(binary);
+            code.op(switch (binary.operator.type()) {
+                case PLUS -> DADD;
+                case MINUS -> DSUB;
+                case STAR -> DMUL;
+                default -> DDIV;
+            }, -2);
+        }
+    }
+
+    private void operand(Expr expr, Token operator) {
+        if (isNumber(expr)) {
+            number(expr);
+        } else {
+            compile(expr);
+            unbox(operator);
+        }
+    }
+
+    /* Both operands as doubles, the left one below. Both are evaluated before either is checked, as interpreted. */
+    private void operands(Expr.Binary expr) {
+        if (isNumber(expr.left)) {
+            number(expr.left);
+            operand(expr.right, expr.operator);
+        } else if (isNumber(expr.right)) {
+            compile(expr.left);
+            number(expr.right);
+            // The left operand goes on top to be checked, then the two doubles swap back.
+            code.op(DUP2_X1, 2);
+            code.op(POP2, -2);
+            unbox(expr.operator);
+            code.op(DUP2_X2, 2);
+            code.op(POP2, -2);
+        } else {
+            compile(expr.left);
+            compile(expr.right);
+            code.op(SWAP, 0);
+            unbox(expr.operator);
+            code.op(DUP2_X1, 2);
+            code.op(POP2, -2);
+            unbox(expr.operator);
+        }
+    }
+
+    // The number on top of the stack, or the error of the operator when it is something else.
+    private void unbox(Token operator) {
+        constant(operator);
+        code.invokeStatic(RUNTIME, "number", "(" + OBJECT + OBJECT + ")D", 0);
+    }
+
+    private void box() {
+        code.invokeStatic("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;", -1);
+    }
+
+    // Stores the value on top of the stack in the next slot of the innermost scope.
+    private void define() {
+        int local = code.newLocal();
+        scopes.get(scopes.size() - 1).add(new Local(local, false));
+        code.store(local);
+    }
+
+    private Local local(int depth, int slot) {
+        return scopes.get(scopes.size() - 1 - depth).get(slot);
+    }
+
+    private void constant(Object value) {
+        int index = constantIndex.computeIfAbsent(value, v -> {
+            constants.add(v);
+            return constants.size() - 1;
+        });
+        code.load(CONSTANTS);
+        code.pushInt(index);
+        code.op(AALOAD, -1);
+    }
+
+    // Runtime helper taking and returning objects only.
+    private void invoke(String name, int arguments) {
+        code.invokeStatic(RUNTIME, name, "(" + OBJECT.repeat(arguments) + ")" + OBJECT, 1 - arguments);
+    }
+
+    private record Local(int index, boolean number) {}
+
+    /*
+     * The variables declared in the function and what is assigned to each. A variable holds numbers only when its
+     * initializer and every value assigned to it are numbers, counting the variables that hold numbers.
+     */
+    private static final class Variables implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        final Set<Stmt.Var> numbers = Collections.newSetFromMap(new IdentityHashMap<>());
+        // Declaration of the local each variable expression and assignment refers to.
+        final Map<Expr, Stmt.Var> targets = new IdentityHashMap<>();
+        // Initializer and assigned values of each variable declared with an initializer.
+        private final Map<Stmt.Var, List<Expr>> values = new IdentityHashMap<>();
+        // Declaration of each slot, per scope of the function. Parameters have none.
+        private final List<List<Stmt.Var>> scopes = new ArrayList<>();
+
+        Variables(Stmt.Function function, boolean isMethod) {
+            scopes.add(new ArrayList<>());
+            int slots = function.params.size() + (isMethod ? 1 : 0);
+            for (int i = 0; i < slots; ++i) scopes.get(0).add(null);
+            scan(function.body);
+        }
+
+        /* Starts out taking every variable for a number and drops them until what is left is consistent. */
+        void findNumbers(Predicate<Expr> isNumber) {
+            numbers.addAll(values.keySet());
+            while (numbers.removeIf(variable -> !values.get(variable).stream().allMatch(isNumber))) {}
+        }
+
+        @Override public Void visitBlockStmt(Stmt.Block stmt) {
+            if (stmt.slots == 0) {
+                scan(stmt.statements);
+                return null;
+            }
+            scopes.add(new ArrayList<>());
+            scan(stmt.statements);
+            scopes.remove(scopes.size() - 1);
+            return null;
+        }
+
+        @Override public Void visitClassStmt(Stmt.Class stmt) {
+            throw new Unsupported();
+        }
+
+        @Override public Void visitExpressionStmt(Stmt.Expression stmt) {
+            return scan(stmt.expression);
+        }
+
+        @Override public Void visitFunctionStmt(Stmt.Function stmt) {
+            throw new Unsupported();
+        }
+
+        @Override public Void visitIfStmt(Stmt.If stmt) {
+            scan(stmt.condition);
+            scan(stmt.thenBranch);
+            if (stmt.elseBranch != null) scan(stmt.elseBranch);
+            return null;
+        }
+
+        @Override public Void visitPrintStmt(Stmt.Print stmt) {
+            return scan(stmt.expression);
+        }
+
+        @Override public Void visitReturnStmt(Stmt.Return stmt) {
+            if (stmt.value != null) scan(stmt.value);
+            return null;
+        }
+
+        @Override public Void visitVarStmt(Stmt.Var stmt) {
+            if (stmt.initializer != null) {
+                scan(stmt.initializer);
+                values.put(stmt, new ArrayList<>(List.of(stmt.initializer)));
+            }
+            scopes.get(scopes.size() - 1).add(stmt);
+            return null;
+        }
+
+        @Override public Void visitWhileStmt(Stmt.While stmt) {
+            scan(stmt.condition);
+            return scan(stmt.body);
+        }
+
+        @Override public Void visitAssignExpr(Expr.Assign expr) {
+            scan(expr.value);
+            Stmt.Var variable = local(expr, expr.depth, expr.slot);
+            if (values.containsKey(variable)) values.get(variable).add(expr.value);
+            return null;
+        }
+
+        @Override public Void visitBinaryExpr(Expr.Binary expr) {
+            scan(expr.left);
+            return scan(expr.right);
+        }
+
+        @Override public Void visitCallExpr(Expr.Call expr) {
+            scan(expr.callee);
+            for (Expr argument : expr.arguments) scan(argument);
+            return null;
+        }
+
+        @Override public Void visitGetExpr(Expr.Get expr) {
+            return scan(expr.object);
+        }
+
+        @Override public Void visitGroupingExpr(Expr.Grouping expr) {
+            return scan(expr.expression);
+        }
+
+        @Override public Void visitLiteralExpr(Expr.Literal expr) {
+            return null;
+        }
+
+        @Override public Void visitLogicalExpr(Expr.Logical expr) {
+            scan(expr.left);
+            return scan(expr.right);
+        }
+
+        @Override public Void visitSetExpr(Expr.Set expr) {
+            scan(expr.object);
+            return scan(expr.value);
+        }
+
+        @Override public Void visitSuperExpr(Expr.Super expr) {
+            throw new Unsupported();
+        }
+
+        @Override public Void visitThisExpr(Expr.This expr) {
+            return null;
+        }
+
+        @Override public Void visitUnaryExpr(Expr.Unary expr) {
+            return scan(expr.right);
+        }
+
+        @Override public Void visitVariableExpr(Expr.Variable expr) {
+            local(expr, expr.depth, expr.slot);
+            return null;
+        }
+
+        // Null for globals, variables of enclosing functions and parameters.
+        private Stmt.Var local(Expr expr, int depth, int slot) {
+            if (depth < 0 || depth >= scopes.size()) return null;
+            Stmt.Var variable = scopes.get(scopes.size() - 1 - depth).get(slot);
+            if (variable != null) targets.put(expr, variable);
+            return variable;
+        }
+
+        private void scan(List<Stmt> statements) {
+            for (Stmt statement : statements) scan(statement);
+        }
+
+        private Void scan(Stmt statement) {
+            return statement.accept(this);
+        }
+
+        private Void scan(Expr expression) {
+            return expression.accept(this);
+        }
+    }
+
+    private static final class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package jlox;
+
+/*
+ * Base class of the function bodies compiled by Jit.
+ * The generated classes are hidden classes of this package that only touch the public members of JitFunction and
+ * JitRuntime.
+ */
+public abstract class JitFunction {
+    // Tokens, literal values and property sites referenced by the compiled code.
+    public final Object[] constants;
+
+    protected JitFunction(Object[] constants) {
+        this.constants = constants;
+    }
+
+    // Arguments are in slot order, a method's receiver first.
+    public abstract Object invoke(Object interpreter, Object closure, Object[] arguments);
+}
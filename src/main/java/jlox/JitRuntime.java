@@ -0,0 +1,118 @@
+package jlox;
+
+import static jlox.Interpreter.requireNumber;
+
+/*
+ * Helpers called from JIT compiled code, one per operation the code cannot do inline.
+ * Values arrive as Object, or as double where an operator wants a number, so the generated code names no types of
+ * the interpreter.
+ */
+public final class JitRuntime {
+
+    public static boolean isTruthy(Object value) {
+        return Interpreter.isTruthy(value);
+    }
+
+    public static Object not(Object right) {
+        return !Interpreter.isTruthy(right);
+    }
+
+    public static double number(Object value, Object operator) {
+        return requireNumber((Token) operator, value);
+    }
+
+    public static Object add(Object left, Object right, Object operator) {
+        if (left instanceof Double l && right instanceof Double r)
+            return l + r;
+        if (left instanceof CharSequence l && right instanceof CharSequence r)
+            return Rope.concat(l, r);
+        throw new RuntimeError((Token) operator, "Operands must be two strings or two numbers.");
+    }
+
+    public static Object greater(Object left, Object right, Object operator) {
+        return requireNumber((Token) operator, left) > requireNumber((Token) operator, right);
+    }
+
+    public static Object greaterEqual(Object left, Object right, Object operator) {
+        return requireNumber((Token) operator, left) >= requireNumber((Token) operator, right);
+    }
+
+    public static Object less(Object left, Object right, Object operator) {
+        return requireNumber((Token) operator, left) < requireNumber((Token) operator, right);
+    }
+
+    public static Object lessEqual(Object left, Object right, Object operator) {
+        return requireNumber((Token) operator, left) <= requireNumber((Token) operator, right);
+    }
+
+    public static Object equal(Object left, Object right) {
+        return Interpreter.isEqual(left, right);
+    }
+
+    public static Object notEqual(Object left, Object right) {
+        return !Interpreter.isEqual(left, right);
+    }
+
+    public static Object global(Object interpreter, Object name) {
+        return ((Interpreter) interpreter).globals.get((Token) name);
+    }
+
+    public static Object assignGlobal(Object interpreter, Object name, Object value) {
+        ((Interpreter) interpreter).globals.assign((Token) name, value);
+        return value;
+    }
+
+    public static Object getAt(Object closure, int distance, int slot) {
+        return ((Environment) closure).getAt(distance, slot);
+    }
+
+    public static Object assignAt(Object closure, int distance, int slot, Object value) {
+        ((Environment) closure).assignAt(distance, slot, value);
+        return value;
+    }
+
+    public static Object call(Object interpreter, Object callee, Object[] arguments, Object paren) {
+        return ((Interpreter) interpreter).call(callee, arguments, (Token) paren);
+    }
+
+    public static Object callee(Object object, Object site) {
+        return Interpreter.callee((Expr.Get) site, object);
+    }
+
+    // The receiver is the first of the arguments.
+    public static Object invoke(Object interpreter, Object callee, Object[] arguments, Object paren) {
+        return ((Interpreter) interpreter).invoke(callee, arguments, (Token) paren);
+    }
+
+    public static Object tailCall(Object interpreter, Object callee, Object[] arguments, Object paren) {
+        return ((Interpreter) interpreter).tailCall(callee, arguments, (Token) paren);
+    }
+
+    public static Object tailInvoke(Object interpreter, Object callee, Object[] arguments, Object paren) {
+        return ((Interpreter) interpreter).tailInvoke(callee, arguments, (Token) paren);
+    }
+
+    public static Object get(Object object, Object site) {
+        if (object instanceof LoxInstance loxInstance)
+            return PropertyCache.get((Expr.Get) site, loxInstance);
+        throw new RuntimeError(((Expr.Get) site).name, "Only instances have properties.");
+    }
+
+    // Checked before the value of a set expression is evaluated, as the interpreter does.
+    public static Object instance(Object object, Object name) {
+        if (object instanceof LoxInstance)
+            return object;
+        throw new RuntimeError((Token) name, "Only instances have fields.");
+    }
+
+    public static Object set(Object object, Object site, Object value) {
+        PropertyCache.set((Expr.Set) site, (LoxInstance) object, value);
+        return null;
+    }
+
+    public static void print(Object interpreter, Object value) {
+        ((Interpreter) interpreter).print(value);
+    }
+
+    private JitRuntime() {}
+}
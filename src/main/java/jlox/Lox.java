@@ -3,35 +3,72 @@ package jlox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
 class Lox {
-    private static final Interpreter interpreter = new Interpreter();
-    private static boolean hasError = false;
-    private static boolean hasRuntimeError = false;
+    // Errors of the script run last, the exit status tells whether there were any.
+    private final Reporter reporter = new Reporter(ErrorSink.STDERR);
+    private final Coverage coverage = Coverage.fromProperty();
+    private final ScriptCache cache = ScriptCache.fromProperty();
+    private final Interpreter interpreter;
+    private final VM vm;
+    private final boolean useVm;
+
+    /*
+     * Only the interpreter counts lines, so with coverage on there is neither VM nor JIT.
+     * A threshold of 0 turns the JIT off.
+     */
+    Lox(boolean useVm, int jitThreshold) {
+        interpreter = coverage == null
+                ? new Interpreter(reporter, Interpreter.STDOUT)
+                : new CountingInterpreter(coverage, reporter, Interpreter.STDOUT);
+        interpreter.jit = coverage == null && jitThreshold > 0;
+        interpreter.jitThreshold = jitThreshold;
+        vm = new VM(reporter, Interpreter.STDOUT);
+        this.useVm = useVm && coverage == null;
+    }
+
+    Lox() {
+        this(false, Jit.THRESHOLD);
+    }
 
     public static void main(String[] args) throws IOException {
-        switch (args.length) {
+        List<String> arguments = new ArrayList<>(List.of(args));
+        Lox lox = new Lox(arguments.remove("--vm"), Jit.THRESHOLD);
+        switch (arguments.size()) {
             case 0:
-                runPrompt();
+                lox.runPrompt();
+                break;
             case 1:
-                runFile(args[0]);
+                lox.runFile(arguments.get(0));
+                break;
             default: {
-                System.out.println("Usage jlox [script]");
+                System.out.println("Usage jlox [--vm] [script]");
                 System.exit(64);
             }
         }
     }
 
-    private static void runFile(String path) throws IOException {
-        run(Files.readString(Path.of(path)));
-        if (hasError) System.exit(65);
-        if (hasRuntimeError) System.exit(70);
+    /* The file is scanned as the parser goes, never held in memory as a whole. */
+    private void runFile(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(path))) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                run(new Scanner(channel, reporter));
+            } else if (cache == null) {
+                run(new ByteScanner(channel, reporter));
+            } else {
+                runCached(channel);
+            }
+        }
+        if (coverage != null) coverage.report(Path.of(path), System.err);
+        if (reporter.hadError()) System.exit(65);
+        if (reporter.hadRuntimeError()) System.exit(70);
     }
 
-    private static void runPrompt() throws IOException {
+    private void runPrompt() throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
         while (true) {
@@ -39,45 +76,70 @@ class Lox {
             String line = reader.readLine();
             if (line == null) break;
             run(line);
-            hasError = false;
         }
     }
 
-    static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
-        if (hasError) return;
+    /* A script that is not in the cache yet goes in once it resolves without errors. */
+    private void runCached(FileChannel channel) throws IOException {
+        String key = cache.key(channel);
+        List<Stmt> statements = cache.load(key);
+        if (statements == null) {
+            statements = resolve(new ByteScanner(channel, reporter));
+            if (statements == null) return;
+            cache.store(key, statements);
+        }
+        execute(statements);
+    }
 
-        Resolver resolver = new Resolver(interpreter);
-        resolver.resolve(statements);
-        if (hasError) return;
+    /* A source in memory is scanned whole, into a TokenBuffer, before it is parsed. */
+    void run(String source) {
+        reporter.reset();
+        Events.Phase scan = Events.phase("scan");
+        TokenBuffer tokens = new Scanner(source, reporter).scanTokens();
+        Events.end(scan);
 
-        interpreter.interpret(statements);
+        Events.Phase parse = Events.phase("parse");
+        List<Stmt> statements = resolve(new Parser(tokens, reporter), parse);
+        if (statements != null) execute(statements);
     }
 
-    static void error(int line, String message) {
-        report(line, "", message);
+    private void run(TokenSource tokens) {
+        List<Stmt> statements = resolve(tokens);
+        if (statements != null) execute(statements);
     }
 
-    private static void report(int line, String where, String message) {
-        System.err.printf("[line %d] Error%s:%s\n", line, where, message);
-        hasError = true;
+    /* Null when the script has errors. */
+    private List<Stmt> resolve(TokenSource tokens) {
+        reporter.reset();
+        Events.Phase parse = Events.phase("parse");
+        return resolve(new Parser(parse == null ? tokens : parse.scanned(tokens), reporter), parse);
     }
 
-    public static void error(Token token, String message) {
-        if (token.type() == TokenType.EOF) {
-            report(token.line(), " at end", message);
-        } else {
-            report(token.line(), "'" + token.lexeme() + "'", message);
-        }
+    /* Parse is the phase the parser runs in. */
+    private List<Stmt> resolve(Parser parser, Events.Phase parse) {
+        List<Stmt> statements = parser.parse();
+        Events.end(parse);
+        if (reporter.hadError()) return null;
+
+        Events.Phase resolve = Events.phase("resolve");
+        Resolver resolver = new Resolver(reporter);
+        resolver.resolve(statements);
+        Events.end(resolve);
+        if (reporter.hadError()) return null;
+        return statements;
     }
 
-    public static String runtimeError(RuntimeError error) {
-        String message = error.getMessage() + "\n[line " + error.token.line() + "]";
-        hasRuntimeError = true;
-        System.err.println(message);
-        return message;
+    private void execute(List<Stmt> statements) {
+        VM.Prototype script = null;
+        if (useVm) {
+            Events.Phase compile = Events.phase("compile");
+            script = Compiler.compile(statements, vm, reporter);
+            Events.end(compile);
+            if (reporter.hadError()) return;
+        }
+        Events.Phase interpret = Events.phase("interpret");
+        if (script != null) vm.interpret(script);
+        else interpreter.interpret(statements);
+        Events.end(interpret);
     }
 }
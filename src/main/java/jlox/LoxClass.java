@@ -1,44 +1,98 @@
 package jlox;
 
-import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 
 class LoxClass implements LoxCallable {
     final String name;
     final LoxClass superclass;
-    final Map<String, LoxFunction> methods;
+    // Inherited methods included, so a lookup never walks the superclass chain.
+    private final Map<Symbol, LoxFunction> methods;
+    // The same methods by the slots of the root shape, for the inline caches.
+    private final LoxFunction[] slots;
+    private final LoxFunction initializer;
+    // Root of the shapes of this class's instances, the one of its declaration.
+    final Shape shape;
+    int fieldCount = 0;
 
-    LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
+    LoxClass(String name, LoxClass superclass, Map<Symbol, LoxFunction> methods, Shape shape) {
         this.name = name;
         this.superclass = superclass;
-        this.methods = methods;
+        this.shape = shape;
+        Map<Symbol, LoxFunction> table = new HashMap<>();
+        if (superclass != null) table.putAll(superclass.methods);
+        table.putAll(methods);
+        this.methods = Map.copyOf(table);
+        this.initializer = this.methods.get(Symbol.INIT);
+        LoxFunction[] slots = new LoxFunction[0];
+        for (Map.Entry<Symbol, LoxFunction> method : this.methods.entrySet()) {
+            int slot = shape.slot(method.getKey());
+            if (slot >= slots.length) slots = Arrays.copyOf(slots, slot + 1);
+            slots[slot] = method.getValue();
+        }
+        this.slots = slots;
     }
 
     @Override public int arity() {
-        LoxFunction initializer = findMethod("init");
         if (initializer == null) return 0;
         else return initializer.arity();
     }
 
-    @Override public Object call(Interpreter interpreter, List<Object> arguments) {
-        LoxInstance instance = new LoxInstance(this);
-        LoxFunction initializer = findMethod("init");
-        if (initializer != null)
-            initializer.bind(instance).call(interpreter, arguments);
+    // The initializer is unbound, the new instance goes ahead of the arguments.
+
+    @Override public Object call(Interpreter interpreter, Object[] arguments) {
+        LoxInstance instance = instantiate(interpreter);
+        if (initializer != null) {
+            Object[] withInstance = new Object[arguments.length + 1];
+            withInstance[0] = instance;
+            System.arraycopy(arguments, 0, withInstance, 1, arguments.length);
+            initializer.call(interpreter, withInstance);
+        }
         return instance;
     }
 
+    @Override public Object call0(Interpreter interpreter) {
+        LoxInstance instance = instantiate(interpreter);
+        if (initializer != null) initializer.call1(interpreter, instance);
+        return instance;
+    }
+
+    @Override public Object call1(Interpreter interpreter, Object a) {
+        LoxInstance instance = instantiate(interpreter);
+        if (initializer != null) initializer.call2(interpreter, instance, a);
+        return instance;
+    }
+
+    @Override public Object call2(Interpreter interpreter, Object a, Object b) {
+        LoxInstance instance = instantiate(interpreter);
+        if (initializer != null) initializer.call3(interpreter, instance, a, b);
+        return instance;
+    }
+
+    @Override public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        LoxInstance instance = instantiate(interpreter);
+        if (initializer != null) initializer.call4(interpreter, instance, a, b, c);
+        return instance;
+    }
+
+    /* Counted for the Statistics, and one in Events.SAMPLE recorded when a flight recording takes them. */
+    private LoxInstance instantiate(Interpreter interpreter) {
+        if ((++interpreter.statistics.instanceAllocations & (Events.SAMPLE - 1)) == 0 && Events.ENABLED)
+            new Events.Allocation(name).commit();
+        return new LoxInstance(this);
+    }
+
     @Override public String toString() {
         return name;
     }
 
-    public LoxFunction findMethod(String name) {
-        if (methods.containsKey(name))
-            return methods.get(name);
-
-        if(superclass != null)
-            return superclass.findMethod(name);
+    public LoxFunction findMethod(Symbol name) {
+        return methods.get(name);
+    }
 
-        return null;
+    /* Null when this class has no method in the slot, which another class of the declaration may have. */
+    LoxFunction method(int slot) {
+        return slot < slots.length ? slots[slot] : null;
     }
 }
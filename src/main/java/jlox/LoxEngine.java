@@ -0,0 +1,72 @@
+package jlox;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.List;
+
+/*
+ * Running Lox inside another program. A Program is a script scanned, parsed and resolved once, which any number of
+ * threads may then run at the same time, each in a Context of its own: its globals, where print goes and where
+ * errors go. Programs share nothing but their syntax trees, and the trees only change in the caches execution keeps
+ * in their nodes: the call counts and compiled code of functions, the operand types of operators and the inline
+ * caches of property sites. None of them refers to the objects of a run, the shapes property sites are keyed by
+ * belong to class declarations, so what one run learns serves every other and no cache keeps a finished run alive.
+ * Each cache is replaced whole and shapes grow in concurrent maps, so a run racing another over a cache at worst
+ * loses what the other learned and misses it again. Runs are in the interpreter, compiling hot functions for the
+ * JIT as the jlox command does. The names of the programs are interned in a Symbol table of the engine, which
+ * goes away with it, nothing of an engine is static.
+ */
+public final class LoxEngine {
+    private final Symbol.Table symbols = new Symbol.Table();
+
+    /* Null when the source has errors, which are all passed to errors first. */
+    public Program compile(String source, ErrorSink errors) {
+        Reporter reporter = new Reporter(errors);
+        List<Stmt> statements = new Parser(new Scanner(source, reporter, symbols).scanTokens(), reporter).parse();
+        if (reporter.hadError()) return null;
+        new Resolver(reporter).resolve(statements);
+        if (reporter.hadError()) return null;
+        return new Program(statements);
+    }
+
+    public Context newContext(Writer out, ErrorSink errors) {
+        return new Context(out, errors);
+    }
+
+    /* The name as the programs of this engine have it. */
+    Symbol symbol(String name) {
+        return symbols.of(name);
+    }
+
+    public static final class Program {
+        final List<Stmt> statements;
+
+        private Program(List<Stmt> statements) {
+            this.statements = List.copyOf(statements);
+        }
+    }
+
+    /* Globals one run defines are there for the next. A context is for one thread at a time. */
+    public static final class Context {
+        private final PrintWriter out;
+        private final Reporter reporter;
+        private final Interpreter interpreter;
+
+        private Context(Writer out, ErrorSink errors) {
+            this.out = out instanceof PrintWriter printer ? printer : new PrintWriter(out);
+            this.reporter = new Reporter(errors);
+            this.interpreter = new Interpreter(reporter, this.out::println);
+        }
+
+        /* False when the run stopped at a runtime error. What it printed is flushed either way. */
+        public boolean run(Program program) {
+            reporter.reset();
+            try {
+                interpreter.interpret(program.statements);
+            } finally {
+                out.flush();
+            }
+            return !reporter.hadRuntimeError();
+        }
+    }
+}
@@ -1,36 +1,84 @@
 package jlox;
 
-import java.util.List;
+import static jlox.Completion.RETURN;
+import static jlox.Completion.TAIL_CALL;
 
+/*
+ * Arguments go straight into the slots of the new environment, in the order the Resolver numbered them.
+ * A method gets its receiver as this in the first slot: a bound method from its receiver field, an unbound
+ * method as the first argument, ahead of its parameters.
+ */
 class LoxFunction implements LoxCallable {
 
     private final Stmt.Function declaration;
     private final Environment closure;
+    private final boolean isMethod;
     private final boolean isInitializer;
+    // Set when a method is taken as a value, null for methods still in their class.
+    private final LoxInstance receiver;
 
-    LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+    LoxFunction(Stmt.Function declaration, Environment closure, boolean isMethod, boolean isInitializer) {
+        this(declaration, closure, isMethod, isInitializer, null);
+    }
+
+    private LoxFunction(Stmt.Function declaration, Environment closure, boolean isMethod, boolean isInitializer,
+                        LoxInstance receiver) {
         this.declaration = declaration;
         this.closure = closure;
+        this.isMethod = isMethod;
         this.isInitializer = isInitializer;
+        this.receiver = receiver;
     }
 
     @Override public int arity() {
         return declaration.params.size();
     }
 
-    @Override public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
-        for (int i = 0; i < declaration.params.size(); ++i)
-            environment.define(declaration.params.get(i).lexeme(), arguments.get(i));
+    @Override public Object call(Interpreter interpreter, Object[] arguments) {
+        return finish(interpreter, run(interpreter, arguments));
+    }
 
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnValue) {
-            if (isInitializer) return closure.getAt(0, "this");
-            return returnValue.value;
-        }
-        if (isInitializer) return closure.getAt(0, "this");
-        return null;
+    @Override public Object call0(Interpreter interpreter) {
+        if (compiled(interpreter) != null) return call(interpreter, NO_ARGUMENTS);
+        return finish(interpreter, execute(interpreter, frame(interpreter)));
+    }
+
+    @Override public Object call1(Interpreter interpreter, Object a) {
+        if (compiled(interpreter) != null) return call(interpreter, new Object[]{a});
+        Environment frame = frame(interpreter);
+        frame.define(a);
+        return finish(interpreter, execute(interpreter, frame));
+    }
+
+    @Override public Object call2(Interpreter interpreter, Object a, Object b) {
+        if (compiled(interpreter) != null) return call(interpreter, new Object[]{a, b});
+        Environment frame = frame(interpreter);
+        frame.define(a);
+        frame.define(b);
+        return finish(interpreter, execute(interpreter, frame));
+    }
+
+    @Override public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        if (compiled(interpreter) != null) return call(interpreter, new Object[]{a, b, c});
+        Environment frame = frame(interpreter);
+        frame.define(a);
+        frame.define(b);
+        frame.define(c);
+        return finish(interpreter, execute(interpreter, frame));
+    }
+
+    @Override public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        if (compiled(interpreter) != null) return call(interpreter, new Object[]{a, b, c, d});
+        Environment frame = frame(interpreter);
+        frame.define(a);
+        frame.define(b);
+        frame.define(c);
+        frame.define(d);
+        return finish(interpreter, execute(interpreter, frame));
+    }
+
+    boolean isUnboundMethod() {
+        return isMethod && receiver == null;
     }
 
     @Override public String toString() {
@@ -38,8 +86,87 @@ class LoxFunction implements LoxCallable {
     }
 
     public LoxFunction bind(LoxInstance loxInstance) {
-        Environment environment = new Environment(closure);
-        environment.define("this", loxInstance);
-        return new LoxFunction(declaration, environment, isInitializer);
+        return new LoxFunction(declaration, closure, isMethod, isInitializer, loxInstance);
+    }
+
+    /*
+     * Compiles the declaration on the call that makes it hot. The count stops at the threshold, so it never wraps
+     * around to reach it again. Racing calls may lose counts, but one of them always writes the threshold itself.
+     */
+    private JitFunction compiled(Interpreter interpreter) {
+        JitFunction compiled = declaration.compiled;
+        int threshold = interpreter.jitThreshold;
+        if (compiled == null && interpreter.jit && !isInitializer
+                && declaration.calls < threshold && ++declaration.calls == threshold)
+            compiled = declaration.compiled = Jit.compile(declaration, isMethod);
+        return compiled;
+    }
+
+    private Environment frame(Interpreter interpreter) {
+        ++interpreter.statistics.environmentAllocations;
+        Environment frame = new Environment(closure, declaration.slots);
+        if (receiver != null) frame.define(receiver);
+        return frame;
+    }
+
+    /* Runs the body once. A tail call at its end is left pending and TAIL_CALL returned. */
+    private Object run(Interpreter interpreter, Object[] arguments) {
+        JitFunction compiled = compiled(interpreter);
+        if (compiled != null) {
+            ++interpreter.statistics.functionCalls;
+            Events.Call event = Events.ENABLED ? Events.Call.start() : null;
+            if (Profiler.ENABLED) interpreter.stack().enter(declaration.name.lexeme());
+            try {
+                return compiled.invoke(interpreter, closure, withReceiver(arguments));
+            } finally {
+                if (Profiler.ENABLED) interpreter.stack().exit();
+                if (Events.ENABLED) event.finish(declaration);
+            }
+        }
+
+        Environment frame = frame(interpreter);
+        for (Object argument : arguments)
+            frame.define(argument);
+        return execute(interpreter, frame);
+    }
+
+    /*
+     * The trampoline: pending tail calls run here one after another, so a chain of them takes a single
+     * stack frame of the call that started it, however long the chain is.
+     */
+    private static Object finish(Interpreter interpreter, Object result) {
+        while (result == TAIL_CALL) {
+            LoxCallable callee = interpreter.tailCallee();
+            Object[] arguments = interpreter.tailArguments();
+            if (!(callee instanceof LoxFunction function))
+                return callee.call(interpreter, arguments);
+            result = function.run(interpreter, arguments);
+        }
+        return result;
+    }
+
+    // Compiled code takes all slots in one array.
+    private Object[] withReceiver(Object[] arguments) {
+        if (receiver == null) return arguments;
+        Object[] slots = new Object[arguments.length + 1];
+        slots[0] = receiver;
+        System.arraycopy(arguments, 0, slots, 1, arguments.length);
+        return slots;
+    }
+
+    /* A tail call leaves the body, and the Profiler's frame with it, before the trampoline makes the call. */
+    private Object execute(Interpreter interpreter, Environment frame) {
+        ++interpreter.statistics.functionCalls;
+        Events.Call event = Events.ENABLED ? Events.Call.start() : null;
+        if (Profiler.ENABLED) interpreter.stack().enter(declaration.name.lexeme());
+        try {
+            Completion completion = interpreter.executeBlock(declaration.body, frame);
+            if (isInitializer) return frame.getAt(0, 0);
+            if (completion == TAIL_CALL) return TAIL_CALL;
+            return completion == RETURN ? interpreter.returnValue() : null;
+        } finally {
+            if (Profiler.ENABLED) interpreter.stack().exit();
+            if (Events.ENABLED) event.finish(declaration);
+        }
     }
 }
@@ -1,32 +1,31 @@
 package jlox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 class LoxInstance {
 
-    private final Map<String, Object> fields = new HashMap<>();
     final LoxClass klass;
+    // Field names and their offsets live in the shape, the instance only keeps the values.
+    Shape shape;
+    Object[] fields;
 
     public LoxInstance(LoxClass klass) {
         this.klass = klass;
-    }
-
-    Object get(Token name) {
-        if (fields.containsKey(name.lexeme()))
-            return fields.get(name.lexeme());
-
-        LoxFunction method = klass.findMethod(name.lexeme());
-        if (method != null) return method.bind(this);
-
-        throw new RuntimeError(name, "Undefined property '" + name.lexeme() + "'");
+        this.shape = klass.shape;
+        this.fields = new Object[klass.fieldCount];
     }
 
     @Override public String toString() {
         return klass.name + " instance";
     }
 
-    public void set(Token name, Object value) {
-        fields.put(name.lexeme(), value);
+    void put(Shape shape, int offset, Object value) {
+        if (offset >= fields.length) {
+            fields = Arrays.copyOf(fields, Math.max(4, fields.length * 2));
+            // Later instances start out with room for as many fields.
+            klass.fieldCount = Math.max(klass.fieldCount, fields.length);
+        }
+        this.shape = shape;
+        fields[offset] = value;
     }
 }
@@ -0,0 +1,271 @@
+package jlox;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Lox under javax.script. A CompiledScript is a LoxEngine.Program, scanned, parsed and resolved once and then run
+ * with whatever bindings each eval brings. Every run gets an interpreter of its own whose globals start out as the
+ * global scope, then the engine scope of the context. Afterwards the globals the script defined or assigned go to the
+ * engine scope, so they are there for the next script and for invokeFunction, while those it left alone stay as the
+ * host put them, where it put them. Lox numbers are doubles: numbers going in are converted, and strings a script
+ * builds come out as Strings.
+ */
+final class LoxScriptEngine extends AbstractScriptEngine implements Compilable, Invocable {
+    private final LoxScriptEngineFactory factory;
+    private final LoxEngine engine = new LoxEngine();
+
+    LoxScriptEngine(LoxScriptEngineFactory factory) {
+        this.factory = factory;
+        setBindings(createBindings(), ScriptContext.ENGINE_SCOPE);
+    }
+
+    @Override public Object eval(String script, ScriptContext context) throws ScriptException {
+        return compile(script, context).eval(context);
+    }
+
+    @Override public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return eval(read(reader), context);
+    }
+
+    @Override public CompiledScript compile(String script) throws ScriptException {
+        return compile(script, context);
+    }
+
+    @Override public CompiledScript compile(Reader script) throws ScriptException {
+        return compile(read(script));
+    }
+
+    /* Bindings may be handed to engines on other threads, so puts from their runs may meet in them. */
+    @Override public Bindings createBindings() {
+        return new SimpleBindings(Collections.synchronizedMap(new HashMap<>()));
+    }
+
+    @Override public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    @Override public Object invokeFunction(String name, Object... args) throws ScriptException, NoSuchMethodException {
+        if (!(context.getAttribute(name) instanceof LoxCallable function))
+            throw new NoSuchMethodException(name);
+        return call(context, function, args);
+    }
+
+    @Override public Object invokeMethod(Object thiz, String name, Object... args)
+            throws ScriptException, NoSuchMethodException {
+        if (!(thiz instanceof LoxInstance instance))
+            throw new IllegalArgumentException("Not a Lox instance: " + thiz);
+        LoxFunction method = instance.klass.findMethod(engine.symbol(name));
+        if (method == null) throw new NoSuchMethodException(name);
+        return call(context, method.bind(instance), args);
+    }
+
+    @Override public <T> T getInterface(Class<T> clasz) {
+        return implement(clasz, null);
+    }
+
+    @Override public <T> T getInterface(Object thiz, Class<T> clasz) {
+        if (!(thiz instanceof LoxInstance))
+            throw new IllegalArgumentException("Not a Lox instance: " + thiz);
+        return implement(clasz, (LoxInstance) thiz);
+    }
+
+    private CompiledScript compile(String script, ScriptContext context) throws ScriptException {
+        Errors errors = new Errors(context);
+        LoxEngine.Program program;
+        try {
+            program = engine.compile(script, errors);
+        } catch (RuntimeError error) {
+            // Compilation reports its errors to the sink, anything it throws still goes out as a ScriptException.
+            throw errors.exception(error.line, error.getMessage());
+        }
+        if (program == null) throw errors.first;
+        return new Compiled(program);
+    }
+
+    private Object run(ScriptContext context, LoxEngine.Program program) throws ScriptException {
+        Errors errors = new Errors(context);
+        PrintWriter out = writer(context);
+        Map<Symbol, Object> seeded = new HashMap<>();
+        Interpreter interpreter = interpreter(context, errors, out, seeded);
+        try {
+            interpreter.interpret(program.statements);
+        } finally {
+            out.flush();
+        }
+        export(context, interpreter, seeded);
+        if (errors.first != null) throw errors.first;
+        return null;
+    }
+
+    private Object call(ScriptContext context, LoxCallable function, Object[] args) throws ScriptException {
+        Object[] arguments = new Object[args == null ? 0 : args.length];
+        for (int i = 0; i < arguments.length; ++i)
+            arguments[i] = toLox(args[i]);
+        if (arguments.length != function.arity())
+            throw new ScriptException("Expected " + function.arity() + " arguments, but got " + arguments.length + ".");
+
+        Errors errors = new Errors(context);
+        PrintWriter out = writer(context);
+        Map<Symbol, Object> seeded = new HashMap<>();
+        Interpreter interpreter = interpreter(context, errors, out, seeded);
+        try {
+            return toJava(function.call(interpreter, arguments));
+        } catch (RuntimeError error) {
+            throw errors.exception(error.line, error.getMessage());
+        } finally {
+            out.flush();
+            export(context, interpreter, seeded);
+        }
+    }
+
+    /* Seeded gets each global the bindings define, as it went in. */
+    private Interpreter interpreter(ScriptContext context, Errors errors, PrintWriter out, Map<Symbol, Object> seeded) {
+        Interpreter interpreter = new Interpreter(new Reporter(errors), out::println);
+        for (int scope : new int[]{ScriptContext.GLOBAL_SCOPE, ScriptContext.ENGINE_SCOPE}) {
+            Bindings bindings = context.getBindings(scope);
+            if (bindings == null) continue;
+            for (Map.Entry<String, Object> binding : snapshot(bindings).entrySet())
+                seeded.put(engine.symbol(binding.getKey()), toLox(binding.getValue()));
+        }
+        seeded.forEach(interpreter.globals::define);
+        return interpreter;
+    }
+
+    /*
+     * An engine on another thread may be putting into the same bindings. The entry set of a synchronized map, as
+     * createBindings makes, copies itself under the lock of the map, where iterating it would throw.
+     */
+    private static Map<String, Object> snapshot(Bindings bindings) {
+        Map<String, Object> copy = new HashMap<>();
+        for (Object entry : bindings.entrySet().toArray()) {
+            Map.Entry<?, ?> binding = (Map.Entry<?, ?>) entry;
+            copy.put((String) binding.getKey(), binding.getValue());
+        }
+        return copy;
+    }
+
+    /*
+     * A global still holding the value it was seeded with was neither defined nor assigned by the script, it stays
+     * out, so a later change to the global scope is not hidden by a copy in the engine scope. Natives such as clock,
+     * the only callables that are neither functions nor classes, each interpreter defines for itself. They stay out
+     * of the bindings unless the bindings already had the name.
+     */
+    private static void export(ScriptContext context, Interpreter interpreter, Map<Symbol, Object> seeded) {
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        for (Map.Entry<Symbol, Object> global : interpreter.globals.values().entrySet()) {
+            String name = global.getKey().name;
+            Object value = global.getValue();
+            if (seeded.containsKey(global.getKey()) && seeded.get(global.getKey()) == value) continue;
+            boolean isNative = value instanceof LoxCallable
+                    && !(value instanceof LoxFunction || value instanceof LoxClass);
+            if (isNative && !bindings.containsKey(name)) continue;
+            bindings.put(name, toJava(value));
+        }
+    }
+
+    private <T> T implement(Class<T> clasz, LoxInstance thiz) {
+        if (clasz == null || !clasz.isInterface())
+            throw new IllegalArgumentException("Not an interface: " + clasz);
+        for (Method method : clasz.getMethods()) {
+            boolean found = thiz == null
+                    ? context.getAttribute(method.getName()) instanceof LoxCallable
+                    : thiz.klass.findMethod(engine.symbol(method.getName())) != null;
+            if (!found && !method.isDefault()) return null;
+        }
+        Object target = thiz == null ? this : thiz;
+        return clasz.cast(Proxy.newProxyInstance(clasz.getClassLoader(), new Class<?>[]{clasz},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) return method.invoke(target, args);
+                    return thiz == null
+                            ? invokeFunction(method.getName(), args)
+                            : invokeMethod(thiz, method.getName(), args);
+                }));
+    }
+
+    private static PrintWriter writer(ScriptContext context) {
+        Writer writer = context.getWriter();
+        return writer instanceof PrintWriter printer ? printer : new PrintWriter(writer);
+    }
+
+    private static String read(Reader reader) throws ScriptException {
+        StringWriter text = new StringWriter();
+        try {
+            reader.transferTo(text);
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+        return text.toString();
+    }
+
+    /* Lox has doubles for numbers and strings for characters. Anything else goes in as it is. */
+    static Object toLox(Object value) {
+        if (value instanceof Double || value instanceof String) return value;
+        if (value instanceof Number number) return number.doubleValue();
+        if (value instanceof Character || value instanceof CharSequence) return value.toString();
+        return value;
+    }
+
+    /* Everything leaving for the host goes through here, see Rope. */
+    static Object toJava(Object value) {
+        return Rope.flatten(value);
+    }
+
+    private final class Compiled extends CompiledScript {
+        private final LoxEngine.Program program;
+
+        Compiled(LoxEngine.Program program) {
+            this.program = program;
+        }
+
+        @Override public Object eval(ScriptContext context) throws ScriptException {
+            return run(context, program);
+        }
+
+        @Override public ScriptEngine getEngine() {
+            return LoxScriptEngine.this;
+        }
+    }
+
+    /* Keeps the first error of a compilation or run, with the file it was in, to be thrown. */
+    private static final class Errors implements ErrorSink {
+        private final String file;
+        ScriptException first;
+
+        Errors(ScriptContext context) {
+            Object file = context.getAttribute(ScriptEngine.FILENAME);
+            this.file = file == null ? null : file.toString();
+        }
+
+        @Override public void compileError(int line, String where, String message) {
+            if (first == null)
+                first = exception(line, where.isEmpty() ? message : "Error " + where.trim() + ": " + message);
+        }
+
+        @Override public void runtimeError(int line, String message) {
+            if (first == null) first = exception(line, message);
+        }
+
+        ScriptException exception(int line, String message) {
+            return new ScriptException(message, file, line);
+        }
+    }
+}
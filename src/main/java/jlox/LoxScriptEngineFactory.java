@@ -0,0 +1,73 @@
+package jlox;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/* Makes jlox known to javax.script, through META-INF/services: new ScriptEngineManager().getEngineByName("lox"). */
+public final class LoxScriptEngineFactory implements ScriptEngineFactory {
+    private static final List<String> NAMES = List.of("lox", "jlox");
+    private static final List<String> EXTENSIONS = List.of("lox");
+    private static final List<String> MIME_TYPES = List.of("application/x-lox");
+
+    @Override public String getEngineName() {
+        return "jlox";
+    }
+
+    @Override public String getEngineVersion() {
+        return "1.0";
+    }
+
+    @Override public List<String> getExtensions() {
+        return EXTENSIONS;
+    }
+
+    @Override public List<String> getMimeTypes() {
+        return MIME_TYPES;
+    }
+
+    @Override public List<String> getNames() {
+        return NAMES;
+    }
+
+    @Override public String getLanguageName() {
+        return "Lox";
+    }
+
+    @Override public String getLanguageVersion() {
+        return "1.0";
+    }
+
+    /*
+     * Not thread-safe: runs have interpreters of their own, but the instances in the bindings and the caches in the
+     * syntax tree are written without locks. An engine is for one thread at a time, hosts wanting more threads
+     * give each an engine of its own or use LoxEngine.
+     */
+    @Override public Object getParameter(String key) {
+        return switch (key) {
+            case ScriptEngine.ENGINE -> getEngineName();
+            case ScriptEngine.ENGINE_VERSION -> getEngineVersion();
+            case ScriptEngine.NAME -> NAMES.get(0);
+            case ScriptEngine.LANGUAGE -> getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION -> getLanguageVersion();
+            default -> null;
+        };
+    }
+
+    @Override public String getMethodCallSyntax(String obj, String m, String... args) {
+        return obj + "." + m + "(" + String.join(", ", args) + ")";
+    }
+
+    @Override public String getOutputStatement(String toDisplay) {
+        return "print \"" + toDisplay + "\";";
+    }
+
+    @Override public String getProgram(String... statements) {
+        return List.of(statements).stream().map(statement -> statement + ";\n").collect(Collectors.joining());
+    }
+
+    @Override public ScriptEngine getScriptEngine() {
+        return new LoxScriptEngine(this);
+    }
+}
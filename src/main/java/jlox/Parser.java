@@ -44,11 +44,34 @@ import static jlox.TokenType.VAR;
 import static jlox.TokenType.WHILE;
 
 class Parser {
-    private final List<Token> tokens;
+    // Tokens are pulled from the scanner as the grammar needs them, one token of lookahead is all it takes.
+    private final TokenSource tokens;
+    private Token previous;
+    private Token next;
+    // Or the source was scanned whole: the grammar reads the types, and makes only the tokens it keeps or reports.
+    private final TokenBuffer buffer;
     private int current = 0;
+    private final Reporter reporter;
 
-    Parser(List<Token> tokens) {
+    Parser(TokenSource tokens) {
+        this(tokens, new Reporter(ErrorSink.STDERR));
+    }
+
+    Parser(TokenSource tokens, Reporter reporter) {
         this.tokens = tokens;
+        this.buffer = null;
+        this.reporter = reporter;
+        this.next = tokens.nextToken();
+    }
+
+    Parser(TokenBuffer tokens) {
+        this(tokens, new Reporter(ErrorSink.STDERR));
+    }
+
+    Parser(TokenBuffer tokens, Reporter reporter) {
+        this.tokens = null;
+        this.buffer = tokens;
+        this.reporter = reporter;
     }
 
     List<Stmt> parse() {
@@ -74,22 +97,22 @@ class Parser {
         Token name = consume(IDENTIFIER, "Expect class name.");
         Expr.Variable superclass = null;
         if (match(LESS)) {
-            consume(IDENTIFIER, "Expect superclass name.");
+            expect(IDENTIFIER, "Expect superclass name.");
             superclass = new Expr.Variable(previous());
         }
-        consume(LEFT_BRACE, "Expect '{' before class body.");
+        expect(LEFT_BRACE, "Expect '{' before class body.");
         List<Stmt.Function> methods = new ArrayList<>();
         while (!check(RIGHT_BRACE) && !isAtEnd())
             methods.add(function("method"));
 
-        consume(RIGHT_BRACE, "Expect '}' after class body.");
+        expect(RIGHT_BRACE, "Expect '}' after class body.");
         return new Stmt.Class(name, superclass, methods);
     }
 
     private Stmt.Function function(String kind) {
         Token name = consume(IDENTIFIER, "Expect " + kind + " name.");
 
-        consume(LEFT_PAREN, "Expect '(' after " + kind + " name.");
+        expect(LEFT_PAREN, "Expect '(' after " + kind + " name.");
         List<Token> parameters = new ArrayList<>();
         if (!check(RIGHT_PAREN)) {
             do {
@@ -98,9 +121,9 @@ class Parser {
                 parameters.add(consume(IDENTIFIER, "Expect parameter name."));
             } while (match(COMMA));
         }
-        consume(RIGHT_PAREN, "Expect ')' after parameters.");
+        expect(RIGHT_PAREN, "Expect ')' after parameters.");
 
-        consume(LEFT_BRACE, "Expect '{' before " + kind + "body.");
+        expect(LEFT_BRACE, "Expect '{' before " + kind + "body.");
         List<Stmt> body = block();
 
         return new Stmt.Function(name, parameters, body);
@@ -111,7 +134,7 @@ class Parser {
         while (!check(RIGHT_BRACE) && !isAtEnd()) {
             statements.add(declaration());
         }
-        consume(RIGHT_BRACE, "Expect '}' after a block.");
+        expect(RIGHT_BRACE, "Expect '}' after a block.");
         return statements;
     }
 
@@ -121,7 +144,7 @@ class Parser {
         if (match(EQUAL))
             initializer = expression();
 
-        consume(SEMICOLON, "Expect ';' after variable declaration");
+        expect(SEMICOLON, "Expect ';' after variable declaration");
         return new Stmt.Var(name, initializer);
     }
 
@@ -136,7 +159,8 @@ class Parser {
     }
 
     private Stmt forStatement() {
-        consume(LEFT_PAREN, "Expect '(' after 'for'.");
+        Token keyword = previous();
+        expect(LEFT_PAREN, "Expect '(' after 'for'.");
         Stmt initializer = null;
         if (match(SEMICOLON))
             initializer = null;
@@ -148,19 +172,19 @@ class Parser {
         Expr condition;
         if (match(SEMICOLON)) condition = new Expr.Literal(true);
         else condition = expression();
-        consume(SEMICOLON, "Expect ';' after loop condition");
+        expect(SEMICOLON, "Expect ';' after loop condition");
 
         Expr increment;
         if (match(RIGHT_PAREN)) increment = null;
         else increment = expression();
-        consume(RIGHT_PAREN, "Expect ')' after for clauses.");
+        expect(RIGHT_PAREN, "Expect ')' after for clauses.");
 
         Stmt body = statement();
 
         if (increment != null)
             body = new Stmt.Block(List.of(body, new Stmt.Expression(increment)));
 
-        body = new Stmt.While(condition, body);
+        body = new Stmt.While(keyword, condition, body);
 
         if (initializer != null)
             body = new Stmt.Block(List.of(initializer, body));
@@ -168,22 +192,24 @@ class Parser {
     }
 
     private Stmt ifDeclaration() {
-        consume(LEFT_PAREN, "Expect '(' after 'if'.");
+        Token keyword = previous();
+        expect(LEFT_PAREN, "Expect '(' after 'if'.");
         var condition = expression();
-        consume(RIGHT_PAREN, "Expect ')' after 'if' condition.");
+        expect(RIGHT_PAREN, "Expect ')' after 'if' condition.");
 
         var thenBranch = statement();
         Stmt elseBranch = null;
         if (match(ELSE))
             elseBranch = statement();
 
-        return new Stmt.If(condition, thenBranch, elseBranch);
+        return new Stmt.If(keyword, condition, thenBranch, elseBranch);
     }
 
     private Stmt printStatement() {
+        Token keyword = previous();
         Expr value = expression();
-        consume(SEMICOLON, "Expect ';' after value.");
-        return new Stmt.Print(value);
+        expect(SEMICOLON, "Expect ';' after value.");
+        return new Stmt.Print(keyword, value);
     }
 
     private Stmt returnStatement() {
@@ -191,21 +217,22 @@ class Parser {
         Expr value = null;
         if (!check(SEMICOLON))
             value = expression();
-        consume(SEMICOLON, "Expect ';' after return value.");
+        expect(SEMICOLON, "Expect ';' after return value.");
         return new Stmt.Return(keyword, value);
     }
 
     private Stmt whileStatement() {
-        consume(LEFT_PAREN, "Expect '(' after 'while'.");
+        Token keyword = previous();
+        expect(LEFT_PAREN, "Expect '(' after 'while'.");
         Expr condition = expression();
-        consume(RIGHT_PAREN, "Expect ')' after 'while' condition.");
+        expect(RIGHT_PAREN, "Expect ')' after 'while' condition.");
         Stmt body = statement();
-        return new Stmt.While(condition, body);
+        return new Stmt.While(keyword, condition, body);
     }
 
     private Stmt expressionStatement() {
         Expr value = expression();
-        consume(SEMICOLON, "Expect ';' after expression.");
+        expect(SEMICOLON, "Expect ';' after expression.");
         return new Stmt.Expression(value);
     }
 
@@ -334,7 +361,7 @@ class Parser {
 
         if (match(SUPER)) {
             Token keyword = previous();
-            consume(DOT, "Expect '.' after 'super;");
+            expect(DOT, "Expect '.' after 'super;");
             Token method = consume(IDENTIFIER, "Expect superclass method name.");
             return new Expr.Super(keyword, method);
         }
@@ -347,7 +374,7 @@ class Parser {
 
         if (match(LEFT_PAREN)) {
             Expr expr = expression();
-            consume(RIGHT_PAREN, "Expect ')' after expression.");
+            expect(RIGHT_PAREN, "Expect ')' after expression.");
             return new Expr.Grouping(expr);
         }
         throw error(peek(), "Expect expression.");
@@ -356,8 +383,8 @@ class Parser {
     private void synchronize() {
         advance();
         while (!isAtEnd()) {
-            if (previous().type() == SEMICOLON) return;
-            switch (peek().type()) {
+            if (previousType() == SEMICOLON) return;
+            switch (peekType()) {
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -383,34 +410,53 @@ class Parser {
 
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().type() == type;
+        return peekType() == type;
     }
 
     private Token consume(TokenType type, String errorMessage) {
-        if (check(type)) return advance();
+        expect(type, errorMessage);
+        return previous();
+    }
+
+    /* Consume for the tokens the tree does not keep. */
+    private void expect(TokenType type, String errorMessage) {
+        if (check(type)) advance();
         else throw error(peek(), errorMessage);
     }
 
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        reporter.error(token, message);
         return new ParseError();
     }
 
-    private Token advance() {
-        if (!isAtEnd()) ++current;
-        return previous();
+    private void advance() {
+        if (isAtEnd()) return;
+        if (buffer != null) {
+            ++current;
+        } else {
+            previous = next;
+            next = tokens.nextToken();
+        }
     }
 
     private boolean isAtEnd() {
-        return peek().type() == EOF;
+        return peekType() == EOF;
+    }
+
+    private TokenType peekType() {
+        return buffer != null ? buffer.type(current) : next.type();
+    }
+
+    private TokenType previousType() {
+        return buffer != null ? buffer.type(current - 1) : previous.type();
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return buffer != null ? buffer.get(current) : next;
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return buffer != null ? buffer.get(current - 1) : previous;
     }
 
     private static class ParseError extends RuntimeException {}
@@ -0,0 +1,144 @@
+package jlox;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/*
+ * Sampling profiler for Lox code, on with -Djlox.profile=<file>. Each Interpreter keeps a shadow stack of the Lox
+ * functions it is in, and a daemon thread copies the stacks every -Djlox.profile.interval milliseconds (1 unless
+ * set). At exit the samples go to the file in the collapsed format flamegraph tools read: one line per distinct
+ * stack, its frames from the script down separated by ';', then the number of samples.
+ * With the property unset ENABLED is a constant false, and the JIT drops the hooks along with their branches.
+ */
+final class Profiler {
+    static final String OUTPUT = System.getProperty("jlox.profile");
+    static final boolean ENABLED = OUTPUT != null;
+    private static final long INTERVAL = Long.getLong("jlox.profile.interval", 1);
+
+    // Stacks of the interpreters running a script, the others have nothing to sample.
+    private static final List<Stack> stacks = new CopyOnWriteArrayList<>();
+    // Only touched by the sampler, and by the shutdown hook once the sampler has stopped.
+    private static final Map<String, Long> samples = new TreeMap<>();
+    private static Thread sampler;
+
+    private Profiler() {}
+
+    /* A stack for a new Interpreter, the first one starts the sampler. */
+    static synchronized Stack stack() {
+        Stack stack = new Stack();
+        if (sampler == null) {
+            sampler = new Thread(Profiler::sample, "jlox-profiler");
+            sampler.setDaemon(true);
+            sampler.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(Profiler::write, "jlox-profiler-output"));
+        }
+        return stack;
+    }
+
+    static int sampled() {
+        return stacks.size();
+    }
+
+    private static void sample() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(INTERVAL);
+                for (Stack stack : stacks) {
+                    String sample = stack.sample();
+                    if (sample != null) samples.merge(sample, 1L, Long::sum);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Stopped to write the samples out.
+        }
+    }
+
+    private static void write() {
+        sampler.interrupt();
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Path.of(OUTPUT), UTF_8))) {
+            collapse(samples, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void collapse(Map<String, Long> samples, PrintWriter out) {
+        samples.forEach((stack, count) -> out.print(stack + " " + count + "\n"));
+    }
+
+    /*
+     * Lox frames of one Interpreter: the function and the line it was called from. Only the Interpreter's thread
+     * pushes and pops, the sampler reads what depth lets it see and may catch a frame in the middle of changing.
+     */
+    static final class Stack {
+        private String[] names = new String[64];
+        private int[] lines = new int[64];
+        private volatile int depth = 0;
+        // Line of the call about to enter a function.
+        private int line;
+        private volatile boolean running = false;
+
+        void callAt(int line) {
+            this.line = line;
+        }
+
+        void enter(String name) {
+            int depth = this.depth;
+            if (depth == names.length) {
+                names = Arrays.copyOf(names, depth * 2);
+                lines = Arrays.copyOf(lines, depth * 2);
+            }
+            names[depth] = name;
+            lines[depth] = line;
+            this.depth = depth + 1;
+        }
+
+        void exit() {
+            depth = depth - 1;
+        }
+
+        /*
+         * Between start and stop the stack is sampled, a script with no function running shows as its own frame.
+         * Only then is it in the sampler's list, so the stack of an Interpreter that is done is not held on to.
+         */
+        void start() {
+            running = true;
+            stacks.add(this);
+        }
+
+        void stop() {
+            stacks.remove(this);
+            running = false;
+            depth = 0;
+        }
+
+        /* The frames as a line of collapsed stacks without the count, null while the Interpreter is idle. */
+        String sample() {
+            if (!running) return null;
+            int depth = this.depth;
+            String[] names = this.names;
+            int[] lines = this.lines;
+            StringBuilder sample = new StringBuilder("<script>");
+            for (int i = 0; i < Math.min(depth, Math.min(names.length, lines.length)); ++i) {
+                if (names[i] == null) continue;
+                sample.append(';').append(names[i]).append(':').append(lines[i]);
+            }
+            return sample.toString();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package jlox;
+
+import java.util.Arrays;
+
+/*
+ * Polymorphic inline cache of a property access site, keyed by the shape of the instance.
+ * A cache is never modified, a site learning a new shape gets a new cache. Past MAX_SHAPES shapes the site
+ * goes megamorphic and looks every access up.
+ * Shapes and method slots belong to class declarations, so a cache holds nothing of the run that filled it and
+ * serves every run of the program alike.
+ */
+final class PropertyCache {
+    static final int MAX_SHAPES = 4;
+    static final PropertyCache EMPTY = new PropertyCache(new Shape[0], new Shape[0], new int[0]);
+    private static final PropertyCache MEGAMORPHIC = new PropertyCache(new Shape[0], new Shape[0], new int[0]);
+
+    private final Shape[] shapes;
+    // Shape of the instance after a set, differs from shapes when the set adds the field.
+    private final Shape[] targets;
+    // Offset of the field, or ~slot of the method when a get finds a method.
+    private final int[] offsets;
+
+    private PropertyCache(Shape[] shapes, Shape[] targets, int[] offsets) {
+        this.shapes = shapes;
+        this.targets = targets;
+        this.offsets = offsets;
+    }
+
+    static Object get(Expr.Get site, LoxInstance instance) {
+        Object value = callee(site, instance);
+        if (value instanceof LoxFunction method && method.isUnboundMethod())
+            return method.bind(instance);
+        return value;
+    }
+
+    /* Like get, but leaves methods unbound for a call to pass the receiver itself. */
+    static Object callee(Expr.Get site, LoxInstance instance) {
+        PropertyCache cache = site.cache;
+        Shape shape = instance.shape;
+        for (int i = 0; i < cache.shapes.length; ++i) {
+            if (cache.shapes[i] == shape) {
+                int offset = cache.offsets[i];
+                if (offset >= 0) return instance.fields[offset];
+                // Classes of one declaration share shapes, but perhaps not every method.
+                LoxFunction method = instance.klass.method(~offset);
+                if (method != null) return method;
+                break;
+            }
+        }
+
+        Symbol name = site.name.symbol();
+        int offset = shape.offset(name);
+        if (offset >= 0) {
+            site.cache = cache.with(shape, shape, offset);
+            return instance.fields[offset];
+        }
+        LoxFunction method = instance.klass.findMethod(name);
+        if (method == null)
+            throw new RuntimeError(site.name, "Undefined property '" + site.name.lexeme() + "'");
+        site.cache = cache.with(shape, shape, ~instance.klass.shape.slot(name));
+        return method;
+    }
+
+    static void set(Expr.Set site, LoxInstance instance, Object value) {
+        PropertyCache cache = site.cache;
+        Shape shape = instance.shape;
+        for (int i = 0; i < cache.shapes.length; ++i) {
+            if (cache.shapes[i] == shape) {
+                instance.put(cache.targets[i], cache.offsets[i], value);
+                return;
+            }
+        }
+
+        Symbol name = site.name.symbol();
+        Shape target = shape;
+        int offset = shape.offset(name);
+        if (offset < 0) {
+            target = shape.with(name);
+            offset = shape.size;
+        }
+        site.cache = cache.with(shape, target, offset);
+        instance.put(target, offset, value);
+    }
+
+    boolean isMegamorphic() {
+        return this == MEGAMORPHIC;
+    }
+
+    private PropertyCache with(Shape shape, Shape target, int offset) {
+        int size = shapes.length;
+        if (this == MEGAMORPHIC || size == MAX_SHAPES) return MEGAMORPHIC;
+        int[] nextOffsets = Arrays.copyOf(offsets, size + 1);
+        nextOffsets[size] = offset;
+        return new PropertyCache(append(shapes, shape), append(targets, target), nextOffsets);
+    }
+
+    private static <T> T[] append(T[] array, T element) {
+        T[] next = Arrays.copyOf(array, array.length + 1);
+        next[array.length] = element;
+        return next;
+    }
+}
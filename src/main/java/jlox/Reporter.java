@@ -0,0 +1,47 @@
+package jlox;
+
+/*
+ * Passes the errors of one piece of work on to its ErrorSink and remembers there were some, so whoever started
+ * the work knows not to go on with it. Each compilation or execution has its own, none is shared between threads.
+ */
+final class Reporter {
+    private final ErrorSink sink;
+    private boolean hadError = false;
+    private boolean hadRuntimeError = false;
+
+    Reporter(ErrorSink sink) {
+        this.sink = sink;
+    }
+
+    void error(int line, String message) {
+        sink.compileError(line, "", message);
+        hadError = true;
+    }
+
+    void error(Token token, String message) {
+        if (token.type() == TokenType.EOF) {
+            sink.compileError(token.line(), " at end", message);
+        } else {
+            sink.compileError(token.line(), "'" + token.lexeme() + "'", message);
+        }
+        hadError = true;
+    }
+
+    void runtimeError(RuntimeError error) {
+        sink.runtimeError(error.line, error.getMessage());
+        hadRuntimeError = true;
+    }
+
+    boolean hadError() {
+        return hadError;
+    }
+
+    boolean hadRuntimeError() {
+        return hadRuntimeError;
+    }
+
+    void reset() {
+        hadError = false;
+        hadRuntimeError = false;
+    }
+}
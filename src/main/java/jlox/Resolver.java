@@ -7,13 +7,18 @@ import java.util.Stack;
 
 class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private final Stack<Map<Symbol, Local>> scopes = new Stack<>();
+    private final Reporter reporter;
     private FunctionType currentFunction = FunctionType.NONE;
     private ClassType currentClass = ClassType.NONE;
-    private final Interpreter interpreter;
 
+    Resolver() {
+        this(new Reporter(ErrorSink.STDERR));
+    }
 
-    Resolver(Interpreter interpreter) {this.interpreter = interpreter;}
+    Resolver(Reporter reporter) {
+        this.reporter = reporter;
+    }
 
     void resolve(List<Stmt> statements) {
         for (Stmt statement : statements) {
@@ -69,17 +74,17 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override public Void visitSuperExpr(Expr.Super expr) {
         if (currentClass == ClassType.NONE)
-            throw new RuntimeError(expr.keyword, "Can't use 'super' outside a class.");
-        if (currentClass != ClassType.SUBCLASS)
-            throw new RuntimeError(expr.keyword, "Can't use 'super' in a class with no superclass.");
+            reporter.error(expr.keyword, "Can't use 'super' outside a class.");
+        else if (currentClass != ClassType.SUBCLASS)
+            reporter.error(expr.keyword, "Can't use 'super' in a class with no superclass.");
 
         resolveLocal(expr, expr.keyword);
         return null;
     }
 
     @Override public Void visitThisExpr(Expr.This expr) {
-        if (currentClass != ClassType.CLASS)
-            throw new RuntimeError(expr.keyword, "Can't use 'this' outside a class.");
+        if (currentClass == ClassType.NONE)
+            reporter.error(expr.keyword, "Can't use 'this' outside a class.");
 
         resolveLocal(expr, expr.keyword);
         return null;
@@ -91,20 +96,31 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
 
     @Override public Void visitVariableExpr(Expr.Variable expr) {
-        if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme()) == Boolean.FALSE) {
-            Lox.error(expr.name, "Can't read local variable in its own initializer.");
+        if (!scopes.isEmpty() && scopes.peek().containsKey(expr.name.symbol())
+                && !scopes.peek().get(expr.name.symbol()).defined()) {
+            reporter.error(expr.name, "Can't read local variable in its own initializer.");
         }
         resolveLocal(expr, expr.name);
         return null;
     }
 
     @Override public Void visitBlockStmt(Stmt.Block stmt) {
+        // A block declaring nothing gets no scope, so the Interpreter runs it without an environment of its own.
+        if (stmt.statements.stream().noneMatch(Resolver::isDeclaration)) {
+            resolve(stmt.statements);
+            return null;
+        }
         beginScope();
         resolve(stmt.statements);
+        stmt.slots = scopes.peek().size();
         endScope();
         return null;
     }
 
+    private static boolean isDeclaration(Stmt statement) {
+        return statement instanceof Stmt.Var || statement instanceof Stmt.Function || statement instanceof Stmt.Class;
+    }
+
     @Override public Void visitClassStmt(Stmt.Class stmt) {
         ClassType enclosingClass = currentClass;
         currentClass = ClassType.CLASS;
@@ -113,23 +129,20 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
         if (stmt.superClass != null) {
             currentClass = ClassType.SUBCLASS;
-            if (stmt.superClass.name.lexeme().equals(stmt.name.lexeme()))
-                throw new RuntimeError(stmt.superClass.name, "A class can't inherit from itself.");
+            if (stmt.superClass.name.symbol() == stmt.name.symbol())
+                reporter.error(stmt.superClass.name, "A class can't inherit from itself.");
 
             resolve(stmt.superClass);
             beginScope();
-            scopes.peek().put("super", true);
+            scopes.peek().put(Symbol.SUPER, new Local(0, true));
         }
 
-        beginScope();
-        scopes.peek().put("this", true);
         for (Stmt.Function method : stmt.methods) {
             FunctionType declaration = FunctionType.METHOD;
-            if (method.name.lexeme().equals("init")) declaration = FunctionType.INITIALIZER;
+            if (method.name.symbol() == Symbol.INIT) declaration = FunctionType.INITIALIZER;
             resolveFunction(method, declaration);
         }
         if (stmt.superClass != null) endScope();
-        endScope();
         currentClass = enclosingClass;
         return null;
     }
@@ -143,8 +156,21 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     private void resolveLocal(Expr expr, Token name) {
         for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.lexeme())) {
-                interpreter.resolve(expr, scopes.size() - i - 1);
+            Local local = scopes.get(i).get(name.symbol());
+            if (local != null) {
+                int depth = scopes.size() - i - 1;
+                if (expr instanceof Expr.Variable variable) {
+                    variable.depth = depth;
+                    variable.slot = local.slot();
+                } else if (expr instanceof Expr.Assign assign) {
+                    assign.depth = depth;
+                    assign.slot = local.slot();
+                } else if (expr instanceof Expr.This thisExpr) {
+                    thisExpr.depth = depth;
+                    thisExpr.slot = local.slot();
+                } else if (expr instanceof Expr.Super superExpr) {
+                    superExpr.depth = depth;
+                }
                 return;
             }
         }
@@ -154,11 +180,15 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         FunctionType enclosingFunction = currentFunction;
         currentFunction = type;
         beginScope();
+        // Methods get their receiver in the first slot of their own scope.
+        if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER)
+            scopes.peek().put(Symbol.THIS, new Local(0, true));
         for (Token param : function.params) {
             declare(param);
             define(param);
         }
         resolve(function.body);
+        function.slots = scopes.peek().size();
         endScope();
         currentFunction = enclosingFunction;
     }
@@ -178,11 +208,13 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override public Void visitReturnStmt(Stmt.Return stmt) {
         if (currentFunction == FunctionType.NONE)
-            Lox.error(stmt.keyword, "Can't return from top level code.");
+            reporter.error(stmt.keyword, "Can't return from top level code.");
         if (stmt.value != null) {
             if (currentFunction == FunctionType.INITIALIZER)
-                throw new RuntimeError(stmt.keyword, "Can't return a value from an initializer.");
+                reporter.error(stmt.keyword, "Can't return a value from an initializer.");
             resolve(stmt.value);
+            // The function has nothing left to do after this call, so it can give its stack frame to the callee.
+            stmt.tailCall = stmt.value instanceof Expr.Call;
         }
         return null;
     }
@@ -209,17 +241,18 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     private void declare(Token name) {
         if (scopes.isEmpty()) return;
 
-        Map<String, Boolean> scope = scopes.peek();
+        Map<Symbol, Local> scope = scopes.peek();
 
-        if (scope.containsKey(name.lexeme()))
-            Lox.error(name, "Already a variable with this name in this scope.");
-        scope.put(name.lexeme(), false);
+        if (scope.containsKey(name.symbol()))
+            reporter.error(name, "Already a variable with this name in this scope.");
+        scope.put(name.symbol(), new Local(scope.size(), false));
     }
 
     private void define(Token name) {
         if (scopes.isEmpty()) return;
 
-        scopes.peek().put(name.lexeme(), true);
+        Map<Symbol, Local> scope = scopes.peek();
+        scope.put(name.symbol(), new Local(scope.get(name.symbol()).slot(), true));
     }
 
     private void resolve(Stmt statement) {
@@ -238,6 +271,9 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         scopes.pop();
     }
 
+    /* Slot is the index of the variable in the Environment created for its scope. */
+    private record Local(int slot, boolean defined) {}
+
     private enum FunctionType {
         NONE, FUNCTION, INITIALIZER, METHOD;
     }
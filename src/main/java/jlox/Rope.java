@@ -0,0 +1,89 @@
+package jlox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/*
+ * String made by the + operator. It keeps its two operands and copies them into one String only when the text
+ * is needed: to print, compare or hash it. Building a string piece by piece then copies every piece once
+ * instead of copying the whole result on every step.
+ * A Lox string is either a String or a Rope, so the interpreter tells strings apart by CharSequence. Ropes stay
+ * inside the interpreter: every value handed to Java code goes through flatten first.
+ */
+final class Rope implements CharSequence {
+    // Dropped once the rope is flattened.
+    private CharSequence left;
+    private CharSequence right;
+    private final int length;
+    private String flat;
+
+    private Rope(CharSequence left, CharSequence right) {
+        this.left = left;
+        this.right = right;
+        this.length = left.length() + right.length();
+        if (length < 0) throw new OutOfMemoryError("String too long.");
+    }
+
+    /* The value as Java code gets it, a Rope as its String. */
+    static Object flatten(Object value) {
+        return value instanceof Rope ? value.toString() : value;
+    }
+
+    static CharSequence concat(CharSequence left, CharSequence right) {
+        if (left.length() == 0) return right;
+        if (right.length() == 0) return left;
+        return new Rope(left, right);
+    }
+
+    @Override public int length() {
+        return length;
+    }
+
+    @Override public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    /* Walks the tree with an explicit stack, a string built in a loop nests one rope per iteration. */
+    @Override public String toString() {
+        if (flat != null) return flat;
+
+        StringBuilder text = new StringBuilder(length);
+        Deque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            CharSequence next = pending.pop();
+            if (next instanceof Rope rope && rope.flat == null) {
+                pending.push(rope.right);
+                pending.push(rope.left);
+            } else {
+                text.append(next.toString());
+            }
+        }
+        flat = text.toString();
+        left = null;
+        right = null;
+        return flat;
+    }
+
+    /*
+     * Equal to a String or a Rope with the same text, but a String is never equal to a Rope. A Rope must never be
+     * compared against a String receiver: Interpreter.isEqual asks the rope, and no Rope reaches Java code or a
+     * collection comparing with equals without being flattened.
+     */
+    @Override public boolean equals(Object other) {
+        if (this == other) return true;
+        if (other instanceof Rope rope)
+            return length == rope.length && toString().equals(rope.toString());
+        if (other instanceof String string)
+            return length == string.length() && toString().equals(string);
+        return false;
+    }
+
+    @Override public int hashCode() {
+        return toString().hashCode();
+    }
+}
@@ -1,11 +1,17 @@
 package jlox;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
 import java.util.Map;
 
 import static java.lang.Character.isDigit;
 import static java.lang.Double.parseDouble;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Map.entry;
 import static jlox.TokenType.AND;
 import static jlox.TokenType.BANG;
@@ -47,7 +53,7 @@ import static jlox.TokenType.TRUE;
 import static jlox.TokenType.VAR;
 import static jlox.TokenType.WHILE;
 
-class Scanner {
+class Scanner implements TokenSource {
 
     private static final Map<String, TokenType> keywords = Map.ofEntries(
             entry("and", AND),
@@ -67,120 +73,225 @@ class Scanner {
             entry("var", VAR),
             entry("while", WHILE));
 
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private static final int CHUNK = 8192;
+
+    private final Reader reader;
+    private final Reporter reporter;
+    private final Symbol.Table symbols;
+    // The source is read a chunk at a time, only the text from the start of the current token on is kept.
+    private char[] buffer = new char[CHUNK];
+    private int limit = 0;
+    private boolean exhausted = false;
+    // While the whole source is scanned into a TokenBuffer nothing is dropped from the front of the buffer.
+    private boolean retain = false;
     private int start = 0, current = 0;
-    private int line = 1;
+    private int line;
+    // The Symbol of the word just scanned.
+    private Symbol word;
 
     public Scanner(String source) {
-        this.source = source;
+        this(source, new Reporter(ErrorSink.STDERR));
+    }
+
+    Scanner(String source, Reporter reporter) {
+        this(source, reporter, Symbol.Table.DEFAULT);
+    }
+
+    Scanner(String source, Reporter reporter, Symbol.Table symbols) {
+        this(new StringReader(source), 1, reporter, symbols);
+    }
+
+    public Scanner(ReadableByteChannel channel) {
+        this(channel, new Reporter(ErrorSink.STDERR));
+    }
+
+    Scanner(ReadableByteChannel channel, Reporter reporter) {
+        this(Channels.newReader(channel, UTF_8), 1, reporter, Symbol.Table.DEFAULT);
+    }
+
+    public Scanner(Reader reader) {
+        this(reader, 1, new Reporter(ErrorSink.STDERR), Symbol.Table.DEFAULT);
+    }
+
+    // For a reader that starts further down the source.
+    Scanner(Reader reader, int line, Reporter reporter, Symbol.Table symbols) {
+        this.reader = reader;
+        this.line = line;
+        this.reporter = reporter;
+        this.symbols = symbols;
+    }
+
+    /* Scans the rest of the source at once, into arrays rather than Token objects. */
+    public TokenBuffer scanTokens() {
+        retain = true;
+        TokenBuffer tokens = new TokenBuffer(symbols);
+        TokenType type;
+        while ((type = next()) != EOF)
+            tokens.add(type, start, current - start, line);
+        tokens.finish(buffer, line);
+        return tokens;
     }
 
-    public List<Token> scanTokens() {
+    @Override public Token nextToken() {
+        TokenType type = next();
+        return switch (type) {
+            case EOF -> new Token(EOF, "", null, line);
+            case STRING -> token(STRING, new String(buffer, start + 1, current - start - 2));
+            case NUMBER -> token(NUMBER, parseDouble(text()));
+            default -> {
+                if (word == null) yield token(type, null);
+                // Words are interned, so a name repeated all over the source shares one String.
+                Token token = new Token(type, word.name, null, line, Token.isName(type) ? word : null);
+                word = null;
+                yield token;
+            }
+        };
+    }
+
+    /* Finds the next token, leaving its text between start and current. */
+    private TokenType next() {
         while (!isAtEnd()) {
             start = current;
-            scanToken();
+            TokenType type = scanToken();
+            if (type != null) return type;
         }
-        tokens.add(new Token(EOF, "", null, line));
-        return tokens;
+        return EOF;
     }
 
-    private void scanToken() {
+    /* Null for whitespace, comments and errors. */
+    private TokenType scanToken() {
         char c = advance();
-        switch (c) {
-            case '(' -> addToken(LEFT_PAREN);
-            case ')' -> addToken(RIGHT_PAREN);
-            case '{' -> addToken(LEFT_BRACE);
-            case '}' -> addToken(RIGHT_BRACE);
-            case ',' -> addToken(COMMA);
-            case '.' -> addToken(DOT);
-            case '-' -> addToken(MINUS);
-            case '+' -> addToken(PLUS);
-            case ';' -> addToken(SEMICOLON);
-            case '*' -> addToken(STAR);
-            case '!' -> addToken(match('=') ? BANG_EQUAL : BANG);
-            case '=' -> addToken(match('=') ? EQUAL_EQUAL : EQUAL);
-            case '<' -> addToken(match('=') ? LESS_EQUAL : LESS);
-            case '>' -> addToken(match('=') ? GREATER_EQUAL : GREATER);
+        return switch (c) {
+            case '(' -> LEFT_PAREN;
+            case ')' -> RIGHT_PAREN;
+            case '{' -> LEFT_BRACE;
+            case '}' -> RIGHT_BRACE;
+            case ',' -> COMMA;
+            case '.' -> DOT;
+            case '-' -> MINUS;
+            case '+' -> PLUS;
+            case ';' -> SEMICOLON;
+            case '*' -> STAR;
+            case '!' -> match('=') ? BANG_EQUAL : BANG;
+            case '=' -> match('=') ? EQUAL_EQUAL : EQUAL;
+            case '<' -> match('=') ? LESS_EQUAL : LESS;
+            case '>' -> match('=') ? GREATER_EQUAL : GREATER;
             case '/' -> { // A comment goes until EOL
-                if (match('/')) while (peek() != '\n' && !isAtEnd()) advance();
-                else addToken(SLASH);
+                if (!match('/')) yield SLASH;
+                while (peek() != '\n' && !isAtEnd()) {
+                    advance();
+                    start = current; // the comment need not stay in the buffer
+                }
+                yield null;
+            }
+            case ' ', '\t', '\r' -> null; // ignore whitespace
+            case '\n' -> {
+                ++line;
+                yield null;
             }
-            case ' ', '\t', '\r' -> {} // ignore whitespace
-            case '\n' -> ++line;
             case '"' -> string();
             default -> {
-                if (isDigit(c)) digit();
-                else if (isAlpha(c)) identifier();
-                else Lox.error(line, "Unexpected character '" + c + "'");
+                if (isDigit(c)) yield digit();
+                if (isAlpha(c)) yield identifier();
+                reporter.error(line, "Unexpected character '" + c + "'");
+                yield null;
             }
-        }
+        };
     }
 
-    private void string() {
+    private TokenType string() {
         while (peek() != '"' && !isAtEnd()) {
             if (peek() == '\n') ++line;
             advance();
         }
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
-            return;
+            reporter.error(line, "Unterminated string.");
+            return null;
         }
 
         advance();
-        String value = source.substring(start + 1, current - 1);
-        addToken(STRING, value);
+        return STRING;
     }
 
-    private void digit() {
+    private TokenType digit() {
         while (isDigit(peek())) advance();
 
         if (peek() == '.' && isDigit(peekNext())) {
             advance();
             while (isDigit(peek())) advance();
         }
-        addToken(NUMBER, parseDouble(source.substring(start, current)));
+        return NUMBER;
     }
 
-    private void identifier() {
+    private TokenType identifier() {
         while (isAlphaNumeric(peek())) advance();
-        String text = source.substring(start, current);
-        addToken(keywords.getOrDefault(text, IDENTIFIER));
+        word = symbols.intern(buffer, start, current);
+        return keywords.getOrDefault(word.name, IDENTIFIER);
     }
 
     private boolean match(char expected) {
         if (isAtEnd()) return false;
-        if (source.charAt(current) != expected) return false;
+        if (buffer[current] != expected) return false;
         ++current;
         return true;
     }
 
-    private void addToken(TokenType type) {
-        addToken(type, null);
+    private Token token(TokenType type, Object literal) {
+        return new Token(type, text(), literal, line);
     }
 
-    private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+    private String text() {
+        return new String(buffer, start, current - start);
     }
 
     private char advance() {
-        return source.charAt(current++);
+        return buffer[current++];
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return !available(1);
     }
 
     private char peek() {
         if (isAtEnd()) return '\0';
-        return source.charAt(current);
+        return buffer[current];
     }
 
     private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
-        return source.charAt(current + 1);
+        if (!available(2)) return '\0';
+        return buffer[current + 1];
+    }
+
+    private boolean available(int count) {
+        while (limit - current < count) {
+            if (!fill()) return false;
+        }
+        return true;
+    }
+
+    /* Moves the current token to the front of the buffer, growing it for long tokens, and reads behind it. */
+    private boolean fill() {
+        if (exhausted) return false;
+        if (start > 0 && !retain) {
+            System.arraycopy(buffer, start, buffer, 0, limit - start);
+            limit -= start;
+            current -= start;
+            start = 0;
+        }
+        if (limit == buffer.length)
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        try {
+            int read = reader.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                exhausted = true;
+                return false;
+            }
+            limit += read;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     private static boolean isAlpha(char c) {
@@ -0,0 +1,148 @@
+package jlox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/*
+ * Directory of resolved syntax trees, named by a hash of the script they come from, so running the same file
+ * again skips the Scanner, Parser and Resolver. The hash also covers the build of jlox, a tree written by another
+ * build is never read. Any trouble with the directory only makes a run miss.
+ */
+final class ScriptCache {
+    private static final int FORMAT = 3;
+
+    private final Path directory;
+    private final long[] version;
+
+    ScriptCache(Path directory) throws IOException {
+        this.directory = directory;
+        this.version = version();
+    }
+
+    /* The directory named by -Djlox.cache, null when there is none or no build to key it on. */
+    static ScriptCache fromProperty() {
+        String directory = System.getProperty("jlox.cache");
+        if (directory == null) return null;
+        try {
+            return new ScriptCache(Path.of(directory));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    String key(FileChannel channel) throws IOException {
+        long[] hash = murmur3(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), version[0], version[1]);
+        return HexFormat.of().toHexDigits(hash[0]) + HexFormat.of().toHexDigits(hash[1]);
+    }
+
+    /* Null when the script is not in the cache. */
+    List<Stmt> load(String key) {
+        Path file = directory.resolve(key);
+        if (!Files.isRegularFile(file)) return null;
+        try (AstReader in = new AstReader(new BufferedInputStream(Files.newInputStream(file)))) {
+            return in.readStmts();
+        } catch (IOException | ClassCastException e) {
+            return null;
+        }
+    }
+
+    /* Written aside and moved into place, a run reading the cache at the same time sees all of it or nothing. */
+    void store(String key, List<Stmt> statements) {
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            try (AstWriter out = new AstWriter(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeStmts(statements);
+            }
+            Files.move(temporary, directory.resolve(key), ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException e) {
+            try {
+                if (temporary != null) Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /*
+     * The size and time of the jar, or of each class file when jlox runs from a directory. Hashing their
+     * contents would cost a short run more than the cache saves it.
+     */
+    private static long[] version() throws IOException {
+        Path location;
+        try {
+            location = Path.of(ScriptCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException | RuntimeException e) {
+            throw new IOException("Cannot tell where jlox runs from.", e);
+        }
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(location)) {
+            try (DirectoryStream<Path> classes = Files.newDirectoryStream(location.resolve("jlox"), "*.class")) {
+                classes.forEach(files::add);
+            }
+            files.sort(null);
+        } else {
+            files.add(location);
+        }
+        ByteBuffer stamps = ByteBuffer.allocate(files.size() * 16);
+        for (Path file : files)
+            stamps.putLong(Files.getLastModifiedTime(file).toMillis()).putLong(Files.size(file));
+        return murmur3(stamps.flip(), FORMAT, FORMAT);
+    }
+
+    /*
+     * MurmurHash3 x64 128, with a seed for each half. Plenty to tell scripts apart, and unlike a MessageDigest
+     * it does not take tens of milliseconds of a short run to load.
+     */
+    private static long[] murmur3(ByteBuffer data, long h1, long h2) {
+        final long c1 = 0x87c37b91114253d5L, c2 = 0x4cf5ad432745937fL;
+        data.order(LITTLE_ENDIAN);
+        int length = data.remaining();
+        while (data.remaining() >= 16) {
+            long k1 = data.getLong(), k2 = data.getLong();
+            h1 ^= Long.rotateLeft(k1 * c1, 31) * c2;
+            h1 = (Long.rotateLeft(h1, 27) + h2) * 5 + 0x52dce729;
+            h2 ^= Long.rotateLeft(k2 * c2, 33) * c1;
+            h2 = (Long.rotateLeft(h2, 31) + h1) * 5 + 0x38495ab5;
+        }
+        long k1 = 0, k2 = 0;
+        for (int i = 0; data.hasRemaining(); ++i) {
+            long b = data.get() & 0xffL;
+            if (i < 8) k1 |= b << (8 * i);
+            else k2 |= b << (8 * (i - 8));
+        }
+        h1 ^= Long.rotateLeft(k1 * c1, 31) * c2;
+        h2 ^= Long.rotateLeft(k2 * c2, 33) * c1;
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = mix(h1);
+        h2 = mix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[] {h1, h2};
+    }
+
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        return k ^ (k >>> 33);
+    }
+}
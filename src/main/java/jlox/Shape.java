@@ -0,0 +1,57 @@
+package jlox;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Hidden class of an instance: where each of its fields lives in the field array.
+ * Instances that got the same fields in the same order share one Shape, reached through a transition per added
+ * field from the root on their class declaration. Every LoxClass a declaration makes, in any run of the program,
+ * starts from that root, so the inline caches on the tree stay valid from one run to the next. Runs on other
+ * threads may add transitions and method slots at the same time.
+ */
+final class Shape {
+    final int size;
+    private final Map<Symbol, Integer> offsets;
+    private final Map<Symbol, Shape> transitions = new ConcurrentHashMap<>();
+    // Only the root numbers methods, the same way for every class of its declaration.
+    private final Map<Symbol, Integer> slots;
+
+    Shape() {
+        this(Map.of(), new ConcurrentHashMap<>());
+    }
+
+    private Shape(Map<Symbol, Integer> offsets, Map<Symbol, Integer> slots) {
+        this.size = offsets.size();
+        this.offsets = offsets;
+        this.slots = slots;
+    }
+
+    /* -1 when instances of this shape have no such field. */
+    int offset(Symbol name) {
+        Integer offset = offsets.get(name);
+        return offset == null ? -1 : offset;
+    }
+
+    /* The field is added at offset size. */
+    Shape with(Symbol name) {
+        return transitions.computeIfAbsent(name, field -> {
+            Map<Symbol, Integer> next = new HashMap<>(offsets);
+            next.put(field, size);
+            return new Shape(next, null);
+        });
+    }
+
+    /* Where the method of this name goes in the method array of a class, numbered on first sight. */
+    int slot(Symbol name) {
+        Integer slot = slots.get(name);
+        return slot != null ? slot : newSlot(name);
+    }
+
+    private synchronized int newSlot(Symbol name) {
+        Integer slot = slots.get(name);
+        if (slot == null) slots.put(name, slot = slots.size());
+        return slot;
+    }
+}
@@ -0,0 +1,60 @@
+package jlox;
+
+import static jlox.TokenType.OR;
+
+/*
+ * Operand types an operator node has seen so far, combined with the operator itself.
+ * A node starts UNINITIALIZED, specializes on its first evaluation and goes GENERIC for good once a guard fails.
+ */
+enum Specialization {
+    UNINITIALIZED,
+    NUMBER_ADD, NUMBER_SUBTRACT, NUMBER_MULTIPLY, NUMBER_DIVIDE,
+    NUMBER_GREATER, NUMBER_GREATER_EQUAL, NUMBER_LESS, NUMBER_LESS_EQUAL, NUMBER_EQUAL, NUMBER_NOT_EQUAL,
+    STRING_ADD,
+    NUMBER_NEGATE, BOOLEAN_NOT,
+    BOOLEAN_AND, BOOLEAN_OR,
+    GENERIC;
+
+    /* Nodes with these specializations can be evaluated to an unboxed double. */
+    boolean producesNumber() {
+        return switch (this) {
+            case NUMBER_ADD, NUMBER_SUBTRACT, NUMBER_MULTIPLY, NUMBER_DIVIDE, NUMBER_NEGATE -> true;
+            default -> false;
+        };
+    }
+
+    static Specialization binary(Token operator, Object left, Object right) {
+        if (left instanceof CharSequence && right instanceof CharSequence)
+            return switch (operator.type()) {
+                case PLUS -> STRING_ADD;
+                default -> GENERIC;
+            };
+        if (!(left instanceof Double && right instanceof Double)) return GENERIC;
+        return switch (operator.type()) {
+            case PLUS -> NUMBER_ADD;
+            case MINUS -> NUMBER_SUBTRACT;
+            case STAR -> NUMBER_MULTIPLY;
+            case SLASH -> NUMBER_DIVIDE;
+            case GREATER -> NUMBER_GREATER;
+            case GREATER_EQUAL -> NUMBER_GREATER_EQUAL;
+            case LESS -> NUMBER_LESS;
+            case LESS_EQUAL -> NUMBER_LESS_EQUAL;
+            case EQUAL_EQUAL -> NUMBER_EQUAL;
+            case BANG_EQUAL -> NUMBER_NOT_EQUAL;
+            default -> GENERIC;
+        };
+    }
+
+    static Specialization unary(Token operator, Object right) {
+        return switch (operator.type()) {
+            case MINUS -> right instanceof Double ? NUMBER_NEGATE : GENERIC;
+            case BANG -> right instanceof Boolean ? BOOLEAN_NOT : GENERIC;
+            default -> GENERIC;
+        };
+    }
+
+    static Specialization logical(Token operator, Object left) {
+        if (!(left instanceof Boolean)) return GENERIC;
+        return operator.type() == OR ? BOOLEAN_OR : BOOLEAN_AND;
+    }
+}
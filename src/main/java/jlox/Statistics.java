@@ -0,0 +1,120 @@
+package jlox;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+/*
+ * Counters of every Interpreter in the process, shown to jconsole or any other JMX client as
+ * jlox.management:type=Interpreter. Each Interpreter counts into its own Counters with plain increments, nothing
+ * is shared between threads until a client reads the sums. The counts of a collected Interpreter are kept.
+ * Starting the platform MBean server takes a good third of a second, so a daemon thread registers the bean ten
+ * seconds after the first Interpreter: shorter runs never pay for it, the long ones it is for hardly notice.
+ */
+final class Statistics implements StatisticsMBean {
+    static final String NAME = "jlox.management:type=Interpreter";
+    private static final long DELAY = 10_000;
+
+    private static final Set<Registration> registrations = new HashSet<>();
+    private static final ReferenceQueue<Interpreter> collected = new ReferenceQueue<>();
+    private static final Counters retired = new Counters();
+    private static Thread registration;
+
+    /*
+     * Written only by the thread running the Interpreter, read by JMX without synchronizing with it: a count
+     * may show a little late, never torn on a 64 bit JVM.
+     */
+    static final class Counters {
+        long functionCalls;
+        long instanceAllocations;
+        long environmentAllocations;
+        long classDefinitions;
+        long runtimeErrors;
+        long interpretNanos;
+    }
+
+    private static final class Registration extends WeakReference<Interpreter> {
+        final Counters counters;
+
+        Registration(Interpreter interpreter, Counters counters) {
+            super(interpreter, collected);
+            this.counters = counters;
+        }
+    }
+
+    /* Counters for a new Interpreter, the first one starts the registration of the bean. */
+    static synchronized Counters counters(Interpreter interpreter) {
+        retire();
+        Counters counters = new Counters();
+        registrations.add(new Registration(interpreter, counters));
+        if (registration == null) {
+            registration = new Thread(Statistics::register, "jlox-management");
+            registration.setDaemon(true);
+            registration.start();
+        }
+        return counters;
+    }
+
+    private static void register() {
+        try {
+            Thread.sleep(DELAY);
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(new StandardMBean(new Statistics(), StatisticsMBean.class), new ObjectName(NAME));
+        } catch (InterruptedException | JMException | SecurityException e) {
+            // Without the bean the counts are only out of sight.
+        }
+    }
+
+    // Folds the counts of collected Interpreters into retired.
+    private static void retire() {
+        for (Reference<?> reference; (reference = collected.poll()) != null; ) {
+            Registration registration = (Registration) reference;
+            if (!registrations.remove(registration)) continue;
+            Counters counters = registration.counters;
+            retired.functionCalls += counters.functionCalls;
+            retired.instanceAllocations += counters.instanceAllocations;
+            retired.environmentAllocations += counters.environmentAllocations;
+            retired.classDefinitions += counters.classDefinitions;
+            retired.runtimeErrors += counters.runtimeErrors;
+            retired.interpretNanos += counters.interpretNanos;
+        }
+    }
+
+    static synchronized long sum(ToLongFunction<Counters> count) {
+        retire();
+        long sum = count.applyAsLong(retired);
+        for (Registration registration : registrations) sum += count.applyAsLong(registration.counters);
+        return sum;
+    }
+
+    @Override public long getFunctionCalls() {
+        return sum(counters -> counters.functionCalls);
+    }
+
+    @Override public long getInstanceAllocations() {
+        return sum(counters -> counters.instanceAllocations);
+    }
+
+    @Override public long getEnvironmentAllocations() {
+        return sum(counters -> counters.environmentAllocations);
+    }
+
+    @Override public long getClassDefinitions() {
+        return sum(counters -> counters.classDefinitions);
+    }
+
+    @Override public long getRuntimeErrors() {
+        return sum(counters -> counters.runtimeErrors);
+    }
+
+    @Override public long getInterpretNanos() {
+        return sum(counters -> counters.interpretNanos);
+    }
+}
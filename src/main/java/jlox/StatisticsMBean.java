@@ -0,0 +1,16 @@
+package jlox;
+
+/* What Statistics shows over JMX, public because JMX only reads beans through public interfaces. */
+public interface StatisticsMBean {
+    long getFunctionCalls();
+
+    long getInstanceAllocations();
+
+    long getEnvironmentAllocations();
+
+    long getClassDefinitions();
+
+    long getRuntimeErrors();
+
+    long getInterpretNanos();
+}
@@ -1,11 +1,14 @@
 package jlox;
 
+import java.io.IOException;
 import java.util.List;
 
 abstract sealed class Stmt permits Stmt.Block, Stmt.Class, Stmt.Expression, Stmt.Function, Stmt.If, Stmt.Print, Stmt.Return, Stmt.Var, Stmt.While {
 
     abstract <R> R accept(Visitor<R> visitor);
 
+    abstract void write(AstWriter out) throws IOException;
+
     interface Visitor<R> {
         R visitBlockStmt(Block stmt);
 
@@ -26,8 +29,25 @@ abstract sealed class Stmt permits Stmt.Block, Stmt.Class, Stmt.Expression, Stmt
         R visitWhileStmt(While stmt);
     }
 
+    static Stmt read(AstReader in) throws IOException {
+        return switch (in.readByte()) {
+            case 0 -> null;
+            case 1 -> Block.read(in);
+            case 2 -> Class.read(in);
+            case 3 -> Expression.read(in);
+            case 4 -> Function.read(in);
+            case 5 -> If.read(in);
+            case 6 -> Print.read(in);
+            case 7 -> Return.read(in);
+            case 8 -> Var.read(in);
+            case 9 -> While.read(in);
+            default -> throw new IOException("Unknown Stmt node.");
+        };
+    }
+
     static final class Block extends Stmt {
         final List<Stmt> statements;
+        int slots;
 
         Block(List<Stmt> statements) {
             this.statements = statements;
@@ -36,12 +56,26 @@ abstract sealed class Stmt permits Stmt.Block, Stmt.Class, Stmt.Expression, Stmt
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitBlockStmt(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(1);
+            out.writeInt(statements.size());
+            for (Stmt element : statements) out.writeStmt(element);
+            out.writeInt(slots);
+        }
+
+        static Block read(AstReader in) throws IOException {
+            Block node = new Block(in.readList(Stmt::read));
+            node.slots = in.readInt();
+            return node;
+        }
     }
 
     static final class Class extends Stmt {
         final Token name;
         final Expr.Variable superClass;
         final List<Stmt.Function> methods;
+        Shape shape = new Shape();
 
         Class(Token name, Expr.Variable superClass, List<Stmt.Function> methods) {
             this.name = name;
@@ -52,6 +86,18 @@ abstract sealed class Stmt permits Stmt.Block, Stmt.Class, Stmt.Expression, Stmt
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitClassStmt(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(2);
+            out.writeToken(name);
+            out.writeExpr(superClass);
+            out.writeInt(methods.size());
+            for (Stmt.Function element : methods) out.writeStmt(element);
+        }
+
+        static Class read(AstReader in) throws IOException {
+            return new Class(in.readToken(), (Expr.Variable) Expr.read(in), in.readList(reader -> (Stmt.Function) Stmt.read(reader)));
+        }
     }
 
     static final class Expression extends Stmt {
@@ -64,12 +110,24 @@ abstract sealed class Stmt permits Stmt.Block, Stmt.Class, Stmt.Expression, Stmt
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitExpressionStmt(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(3);
+            out.writeExpr(expression);
+        }
+
+        static Expression read(AstReader in) throws IOException {
+            return new Expression(Expr.read(in));
+        }
     }
 
     static final class Function extends Stmt {
         final Token name;
         final List<Token> params;
         final List<Stmt> body;
+        int slots;
+        int calls;
+        JitFunction compiled;
 
         Function(Token name, List<Token> params, List<Stmt> body) {
             this.name = name;
@@ -80,14 +138,32 @@ abstract sealed class Stmt permits Stmt.Block, Stmt.Class, Stmt.Expression, Stmt
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitFunctionStmt(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(4);
+            out.writeToken(name);
+            out.writeInt(params.size());
+            for (Token element : params) out.writeToken(element);
+            out.writeInt(body.size());
+            for (Stmt element : body) out.writeStmt(element);
+            out.writeInt(slots);
+        }
+
+        static Function read(AstReader in) throws IOException {
+            Function node = new Function(in.readToken(), in.readList(AstReader::readToken), in.readList(Stmt::read));
+            node.slots = in.readInt();
+            return node;
+        }
     }
 
     static final class If extends Stmt {
+        final Token keyword;
         final Expr condition;
         final Stmt thenBranch;
         final Stmt elseBranch;
 
-        If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
+        If(Token keyword, Expr condition, Stmt thenBranch, Stmt elseBranch) {
+            this.keyword = keyword;
             this.condition = condition;
             this.thenBranch = thenBranch;
             this.elseBranch = elseBranch;
@@ -96,23 +172,48 @@ abstract sealed class Stmt permits Stmt.Block, Stmt.Class, Stmt.Expression, Stmt
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitIfStmt(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(5);
+            out.writeToken(keyword);
+            out.writeExpr(condition);
+            out.writeStmt(thenBranch);
+            out.writeStmt(elseBranch);
+        }
+
+        static If read(AstReader in) throws IOException {
+            return new If(in.readToken(), Expr.read(in), Stmt.read(in), Stmt.read(in));
+        }
     }
 
     static final class Print extends Stmt {
+        final Token keyword;
         final Expr expression;
 
-        Print(Expr expression) {
+        Print(Token keyword, Expr expression) {
+            this.keyword = keyword;
             this.expression = expression;
         }
 
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitPrintStmt(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(6);
+            out.writeToken(keyword);
+            out.writeExpr(expression);
+        }
+
+        static Print read(AstReader in) throws IOException {
+            return new Print(in.readToken(), Expr.read(in));
+        }
     }
 
     static final class Return extends Stmt {
         final Token keyword;
         final Expr value;
+        boolean tailCall;
 
         Return(Token keyword, Expr value) {
             this.keyword = keyword;
@@ -122,6 +223,19 @@ abstract sealed class Stmt permits Stmt.Block, Stmt.Class, Stmt.Expression, Stmt
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitReturnStmt(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(7);
+            out.writeToken(keyword);
+            out.writeExpr(value);
+            out.writeBoolean(tailCall);
+        }
+
+        static Return read(AstReader in) throws IOException {
+            Return node = new Return(in.readToken(), Expr.read(in));
+            node.tailCall = in.readBoolean();
+            return node;
+        }
     }
 
     static final class Var extends Stmt {
@@ -136,13 +250,25 @@ abstract sealed class Stmt permits Stmt.Block, Stmt.Class, Stmt.Expression, Stmt
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitVarStmt(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(8);
+            out.writeToken(name);
+            out.writeExpr(initializer);
+        }
+
+        static Var read(AstReader in) throws IOException {
+            return new Var(in.readToken(), Expr.read(in));
+        }
     }
 
     static final class While extends Stmt {
+        final Token keyword;
         final Expr condition;
         final Stmt body;
 
-        While(Expr condition, Stmt body) {
+        While(Token keyword, Expr condition, Stmt body) {
+            this.keyword = keyword;
             this.condition = condition;
             this.body = body;
         }
@@ -150,5 +276,16 @@ abstract sealed class Stmt permits Stmt.Block, Stmt.Class, Stmt.Expression, Stmt
         @Override <R> R accept(Visitor<R> visitor) {
             return visitor.visitWhileStmt(this);
         }
+
+        @Override void write(AstWriter out) throws IOException {
+            out.writeByte(9);
+            out.writeToken(keyword);
+            out.writeExpr(condition);
+            out.writeStmt(body);
+        }
+
+        static While read(AstReader in) throws IOException {
+            return new While(in.readToken(), Expr.read(in), Stmt.read(in));
+        }
     }
 }
@@ -0,0 +1,136 @@
+package jlox;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/*
+ * Interned name. The Scanner turns every identifier into the one Symbol for its text in its Table, so maps keyed by
+ * names hash a precomputed int and compare by identity instead of going through the characters again.
+ * Names from different tables never meet: each LoxEngine has a table of its own, which goes away with the engine,
+ * and the jlox command, running one script, uses the DEFAULT table.
+ */
+final class Symbol {
+    // In every table, for the names the interpreter looks up itself.
+    static final Symbol INIT = new Symbol("init", "init".hashCode());
+    static final Symbol THIS = new Symbol("this", "this".hashCode());
+    static final Symbol SUPER = new Symbol("super", "super".hashCode());
+    static final Symbol CLOCK = new Symbol("clock", "clock".hashCode());
+
+    final String name;
+    private final int hash;
+
+    private Symbol(String name, int hash) {
+        this.name = name;
+        this.hash = hash;
+    }
+
+    /* The symbol in the DEFAULT table. */
+    static Symbol of(String name) {
+        return Table.DEFAULT.of(name);
+    }
+
+    private boolean matches(char[] source, int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = start; i < end; ++i) {
+            if (name.charAt(i - start) != source[i]) return false;
+        }
+        return true;
+    }
+
+    private boolean matches(byte[] source, int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = start; i < end; ++i) {
+            if (name.charAt(i - start) != source[i]) return false;
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    // The same as the hash of the name, symbols are equal only to themselves.
+    @Override public int hashCode() {
+        return hash;
+    }
+
+    @Override public String toString() {
+        return name;
+    }
+
+    /* Grows with the names of the scripts scanned into it and never shrinks. */
+    static final class Table {
+        static final Table DEFAULT = new Table();
+
+        // Open addressing, with the hashes beside the symbols so a probe only looks at a name when its hash matches.
+        private Symbol[] symbols = new Symbol[1024];
+        private int[] hashes = new int[1024];
+        private int count = 0;
+
+        Table() {
+            for (Symbol symbol : new Symbol[]{INIT, THIS, SUPER, CLOCK}) {
+                int mask = symbols.length - 1;
+                int index = spread(symbol.hash) & mask;
+                while (symbols[index] != null) index = (index + 1) & mask;
+                add(symbol, index);
+            }
+        }
+
+        Symbol of(String name) {
+            return intern(name.toCharArray(), 0, name.length());
+        }
+
+        /* Looks the text up without copying it out of the source, only a new name gets its own String. */
+        synchronized Symbol intern(char[] source, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; ++i)
+                hash = 31 * hash + source[i];
+
+            int mask = symbols.length - 1;
+            for (int index = spread(hash) & mask; ; index = (index + 1) & mask) {
+                Symbol symbol = symbols[index];
+                if (symbol == null)
+                    return add(new Symbol(new String(source, start, end - start), hash), index);
+                if (hashes[index] == hash && symbol.matches(source, start, end))
+                    return symbol;
+            }
+        }
+
+        /* The same for ASCII text. */
+        synchronized Symbol intern(byte[] source, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; ++i)
+                hash = 31 * hash + source[i];
+
+            int mask = symbols.length - 1;
+            for (int index = spread(hash) & mask; ; index = (index + 1) & mask) {
+                Symbol symbol = symbols[index];
+                if (symbol == null)
+                    return add(new Symbol(new String(source, start, end - start, US_ASCII), hash), index);
+                if (hashes[index] == hash && symbol.matches(source, start, end))
+                    return symbol;
+            }
+        }
+
+        private Symbol add(Symbol symbol, int index) {
+            symbols[index] = symbol;
+            hashes[index] = symbol.hash;
+            if (++count > symbols.length / 2) grow();
+            return symbol;
+        }
+
+        private void grow() {
+            Symbol[] grownSymbols = new Symbol[symbols.length * 2];
+            int[] grownHashes = new int[symbols.length * 2];
+            int mask = grownSymbols.length - 1;
+            for (Symbol symbol : symbols) {
+                if (symbol == null) continue;
+                int index = spread(symbol.hash) & mask;
+                while (grownSymbols[index] != null) index = (index + 1) & mask;
+                grownSymbols[index] = symbol;
+                grownHashes[index] = symbol.hash;
+            }
+            symbols = grownSymbols;
+            hashes = grownHashes;
+        }
+    }
+}
@@ -1,6 +1,19 @@
 package jlox;
 
-record Token(TokenType type, String lexeme, Object literal, int line) {
+import static jlox.TokenType.IDENTIFIER;
+import static jlox.TokenType.SUPER;
+import static jlox.TokenType.THIS;
+
+// Tokens that name variables, properties or methods carry their interned Symbol, the others null.
+record Token(TokenType type, String lexeme, Object literal, int line, Symbol symbol) {
+
+    Token(TokenType type, String lexeme, Object literal, int line) {
+        this(type, lexeme, literal, line, isName(type) ? Symbol.of(lexeme) : null);
+    }
+
+    static boolean isName(TokenType type) {
+        return type == IDENTIFIER || type == THIS || type == SUPER;
+    }
 
     @Override
     public String toString() {
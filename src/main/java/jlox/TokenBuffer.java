@@ -0,0 +1,92 @@
+package jlox;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+import static java.lang.Double.parseDouble;
+import static jlox.TokenType.EOF;
+import static jlox.TokenType.NUMBER;
+import static jlox.TokenType.STRING;
+
+/*
+ * Scanned source kept as parallel arrays of token types, offsets, lengths and lines over the source text.
+ * A token takes 13 bytes here instead of a record, a lexeme String and a boxed literal. The Parser reads the types,
+ * get makes a Token only for the tokens it keeps in the tree or reports an error at, and does not keep it.
+ */
+final class TokenBuffer extends AbstractList<Token> implements RandomAccess {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final Symbol.Table symbols;
+    private char[] text;
+    private byte[] types = new byte[256];
+    private int[] starts = new int[256];
+    private int[] lengths = new int[256];
+    private int[] lines = new int[256];
+    private int count = 0;
+
+    TokenBuffer(Symbol.Table symbols) {
+        this.symbols = symbols;
+    }
+
+    void add(TokenType type, int start, int length, int line) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+        types[count] = (byte) type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        ++count;
+    }
+
+    /* Closes the buffer with EOF and trims it, the offsets of the tokens point into text. */
+    void finish(char[] text, int line) {
+        this.text = text;
+        add(EOF, 0, 0, line);
+        types = Arrays.copyOf(types, count);
+        starts = Arrays.copyOf(starts, count);
+        lengths = Arrays.copyOf(lengths, count);
+        lines = Arrays.copyOf(lines, count);
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    /* Names come from the symbol table, so every lexeme of a name is the same String. */
+    String lexeme(int index) {
+        if (type(index) == EOF) return "";
+        int start = starts[index], end = start + lengths[index];
+        if (Token.isName(type(index))) return symbols.intern(text, start, end).name;
+        return new String(text, start, end - start);
+    }
+
+    Object literal(int index) {
+        return switch (type(index)) {
+            case STRING -> new String(text, starts[index] + 1, lengths[index] - 2);
+            case NUMBER -> parseDouble(new String(text, starts[index], lengths[index]));
+            default -> null;
+        };
+    }
+
+    @Override public Token get(int index) {
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException(index);
+        TokenType type = type(index);
+        if (!Token.isName(type)) return new Token(type, lexeme(index), literal(index), lines[index]);
+        Symbol symbol = symbols.intern(text, starts[index], starts[index] + lengths[index]);
+        return new Token(type, symbol.name, null, lines[index], symbol);
+    }
+
+    @Override public int size() {
+        return count;
+    }
+}
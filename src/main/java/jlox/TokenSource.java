@@ -0,0 +1,6 @@
+package jlox;
+
+/* Where the Parser pulls its tokens from, one at a time. After the last token comes EOF, over and over. */
+interface TokenSource {
+    Token nextToken();
+}
@@ -0,0 +1,11 @@
+package jlox;
+
+/* Thrown by the unboxed evaluation of an expression that did not produce a number, carrying what it produced instead. */
+class UnexpectedResult extends RuntimeException {
+    final Object value;
+
+    public UnexpectedResult(Object value) {
+        super(null, null, false, false);
+        this.value = value;
+    }
+}
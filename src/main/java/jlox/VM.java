@@ -0,0 +1,568 @@
+package jlox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import static jlox.OpCode.ADD;
+import static jlox.OpCode.CALL;
+import static jlox.OpCode.CLASS;
+import static jlox.OpCode.CLOSE_UPVALUE;
+import static jlox.OpCode.CLOSURE;
+import static jlox.OpCode.CONSTANT;
+import static jlox.OpCode.DEFINE_GLOBAL;
+import static jlox.OpCode.DIVIDE;
+import static jlox.OpCode.EQUAL;
+import static jlox.OpCode.FALSE;
+import static jlox.OpCode.GET_GLOBAL;
+import static jlox.OpCode.GET_LOCAL;
+import static jlox.OpCode.GET_PROPERTY;
+import static jlox.OpCode.GET_SUPER;
+import static jlox.OpCode.GET_UPVALUE;
+import static jlox.OpCode.GREATER;
+import static jlox.OpCode.GREATER_EQUAL;
+import static jlox.OpCode.INHERIT;
+import static jlox.OpCode.INVOKE;
+import static jlox.OpCode.JUMP;
+import static jlox.OpCode.JUMP_IF_FALSE;
+import static jlox.OpCode.LESS;
+import static jlox.OpCode.LESS_EQUAL;
+import static jlox.OpCode.LOOP;
+import static jlox.OpCode.METHOD;
+import static jlox.OpCode.MULTIPLY;
+import static jlox.OpCode.NEGATE;
+import static jlox.OpCode.NIL;
+import static jlox.OpCode.NOT;
+import static jlox.OpCode.NOT_EQUAL;
+import static jlox.OpCode.POP;
+import static jlox.OpCode.PRINT;
+import static jlox.OpCode.RETURN;
+import static jlox.OpCode.SET_GLOBAL;
+import static jlox.OpCode.SET_LOCAL;
+import static jlox.OpCode.SET_PROPERTY;
+import static jlox.OpCode.SET_UPVALUE;
+import static jlox.OpCode.SUBTRACT;
+import static jlox.OpCode.SUPER_INVOKE;
+import static jlox.OpCode.TRUE;
+
+/* Stack machine running the bytecode produced by the Compiler. Lox calls don't grow the Java stack. */
+class VM {
+    private static final int FRAMES_MAX = 1 << 14;
+    private static final Object UNDEFINED = new Object();
+
+    // Global names are numbered as the Compiler meets them, code compiled for this VM only runs on it.
+    private final Map<Symbol, Integer> globalSlots = new HashMap<>();
+    private final List<Symbol> globalNames = new ArrayList<>();
+
+    private Object[] globals = new Object[0];
+    private Object[] stack = new Object[256];
+    private int sp = 0;
+
+    private Closure[] frameClosures = new Closure[64];
+    private int[] frameIps = new int[64];
+    private int[] frameBases = new int[64];
+    private int frameCount = 0;
+
+    private Upvalue openUpvalues = null;
+
+    private final Reporter reporter;
+    // Takes what print statements print, a line at a time.
+    private final Consumer<String> out;
+
+    VM() {
+        this(new Reporter(ErrorSink.STDERR), Interpreter.STDOUT);
+    }
+
+    VM(Reporter reporter, Consumer<String> out) {
+        this.reporter = reporter;
+        this.out = out;
+        defineGlobal(Symbol.CLOCK, new Native("clock", 0) {
+            @Override Object call(Object[] arguments) {
+                return (double) System.currentTimeMillis() / 1000.0;
+            }
+        });
+    }
+
+    int globalSlot(Symbol name) {
+        Integer slot = globalSlots.get(name);
+        if (slot == null) {
+            slot = globalNames.size();
+            globalSlots.put(name, slot);
+            globalNames.add(name);
+        }
+        return slot;
+    }
+
+    private Symbol globalName(int slot) {
+        return globalNames.get(slot);
+    }
+
+    private void defineGlobal(Symbol name, Object value) {
+        int slot = globalSlot(name);
+        ensureGlobals(slot);
+        globals[slot] = value;
+    }
+
+    private void ensureGlobals(int slot) {
+        if (slot < globals.length) return;
+        int length = globals.length;
+        globals = Arrays.copyOf(globals, Math.max(slot + 1, length * 2));
+        Arrays.fill(globals, length, globals.length, UNDEFINED);
+    }
+
+    void interpret(Prototype script) {
+        try {
+            Closure closure = new Closure(script);
+            stack[sp++] = closure;
+            call(closure, 0, 0);
+            run();
+        } catch (RuntimeError error) {
+            reporter.runtimeError(error);
+            Arrays.fill(stack, null);
+            sp = 0;
+            frameCount = 0;
+            openUpvalues = null;
+        }
+    }
+
+    /*
+     * The stack and its pointer live in locals while an instruction runs, they are written back to the fields
+     * only around calls. call() makes room for the whole frame up front, so pushes never check the capacity.
+     */
+    private void run() {
+        Object[] stack = this.stack;
+        int sp = this.sp;
+        Closure closure = frameClosures[frameCount - 1];
+        byte[] code = closure.prototype.chunk.code;
+        Object[] constants = closure.prototype.chunk.constants();
+        int ip = frameIps[frameCount - 1];
+        int base = frameBases[frameCount - 1];
+
+        while (true) {
+            byte instruction = code[ip++];
+            switch (instruction) {
+                case CONSTANT -> {
+                    stack[sp++] = constants[readShort(code, ip)];
+                    ip += 2;
+                }
+                case NIL -> stack[sp++] = null;
+                case TRUE -> stack[sp++] = true;
+                case FALSE -> stack[sp++] = false;
+                case POP -> --sp;
+                case GET_LOCAL -> stack[sp++] = stack[base + (code[ip++] & 0xff)];
+                case SET_LOCAL -> stack[base + (code[ip++] & 0xff)] = stack[sp - 1];
+                case GET_GLOBAL -> {
+                    int slot = readShort(code, ip);
+                    ip += 2;
+                    Object value = slot < globals.length ? globals[slot] : UNDEFINED;
+                    if (value == UNDEFINED)
+                        throw error(closure, ip, "Undefined variable '" + globalName(slot) + "'.");
+                    stack[sp++] = value;
+                }
+                case DEFINE_GLOBAL -> {
+                    int slot = readShort(code, ip);
+                    ip += 2;
+                    ensureGlobals(slot);
+                    globals[slot] = stack[--sp];
+                }
+                case SET_GLOBAL -> {
+                    int slot = readShort(code, ip);
+                    ip += 2;
+                    if (slot >= globals.length || globals[slot] == UNDEFINED)
+                        throw error(closure, ip, "Undefined variable '" + globalName(slot) + "'.");
+                    globals[slot] = stack[sp - 1];
+                }
+                case GET_UPVALUE -> {
+                    Upvalue upvalue = closure.upvalues[code[ip++] & 0xff];
+                    stack[sp++] = upvalue.slot >= 0 ? stack[upvalue.slot] : upvalue.value;
+                }
+                case SET_UPVALUE -> {
+                    Upvalue upvalue = closure.upvalues[code[ip++] & 0xff];
+                    if (upvalue.slot >= 0) stack[upvalue.slot] = stack[sp - 1];
+                    else upvalue.value = stack[sp - 1];
+                }
+                case GET_PROPERTY -> {
+                    Symbol name = (Symbol) constants[readShort(code, ip)];
+                    ip += 2;
+                    if (!(stack[sp - 1] instanceof Instance instance))
+                        throw error(closure, ip, "Only instances have properties.");
+                    Object value = instance.fields.get(name);
+                    if (value != null || instance.fields.containsKey(name)) {
+                        stack[sp - 1] = value;
+                    } else {
+                        Closure method = instance.klass.methods.get(name);
+                        if (method == null)
+                            throw error(closure, ip, "Undefined property '" + name + "'");
+                        stack[sp - 1] = new BoundMethod(instance, method);
+                    }
+                }
+                case SET_PROPERTY -> {
+                    Symbol name = (Symbol) constants[readShort(code, ip)];
+                    ip += 2;
+                    if (!(stack[sp - 2] instanceof Instance instance))
+                        throw error(closure, ip, "Only instances have fields.");
+                    instance.fields.put(name, stack[sp - 1]);
+                    stack[sp - 2] = stack[sp - 1];
+                    --sp;
+                }
+                case GET_SUPER -> {
+                    Symbol name = (Symbol) constants[readShort(code, ip)];
+                    ip += 2;
+                    Klass superclass = (Klass) stack[--sp];
+                    Closure method = superclass.methods.get(name);
+                    if (method == null)
+                        throw error(closure, ip, "Undefined property '" + name + "'");
+                    stack[sp - 1] = new BoundMethod((Instance) stack[sp - 1], method);
+                }
+                case EQUAL -> {
+                    Object b = stack[--sp];
+                    stack[sp - 1] = Objects.equals(stack[sp - 1], b);
+                }
+                case NOT_EQUAL -> {
+                    Object b = stack[--sp];
+                    stack[sp - 1] = !Objects.equals(stack[sp - 1], b);
+                }
+                case GREATER -> {
+                    double b = number(closure, ip, stack[--sp]);
+                    stack[sp - 1] = number(closure, ip, stack[sp - 1]) > b;
+                }
+                case GREATER_EQUAL -> {
+                    double b = number(closure, ip, stack[--sp]);
+                    stack[sp - 1] = number(closure, ip, stack[sp - 1]) >= b;
+                }
+                case LESS -> {
+                    double b = number(closure, ip, stack[--sp]);
+                    stack[sp - 1] = number(closure, ip, stack[sp - 1]) < b;
+                }
+                case LESS_EQUAL -> {
+                    double b = number(closure, ip, stack[--sp]);
+                    stack[sp - 1] = number(closure, ip, stack[sp - 1]) <= b;
+                }
+                case ADD -> {
+                    Object b = stack[--sp];
+                    Object a = stack[sp - 1];
+                    if (a instanceof Double l && b instanceof Double r)
+                        stack[sp - 1] = l + r;
+                    else if (a instanceof String l && b instanceof String r)
+                        stack[sp - 1] = l + r;
+                    else
+                        throw error(closure, ip, "Operands must be two strings or two numbers.");
+                }
+                case SUBTRACT -> {
+                    double b = number(closure, ip, stack[--sp]);
+                    stack[sp - 1] = number(closure, ip, stack[sp - 1]) - b;
+                }
+                case MULTIPLY -> {
+                    double b = number(closure, ip, stack[--sp]);
+                    stack[sp - 1] = number(closure, ip, stack[sp - 1]) * b;
+                }
+                case DIVIDE -> {
+                    double b = number(closure, ip, stack[--sp]);
+                    stack[sp - 1] = number(closure, ip, stack[sp - 1]) / b;
+                }
+                case NOT -> stack[sp - 1] = !isTruthy(stack[sp - 1]);
+                case NEGATE -> stack[sp - 1] = -number(closure, ip, stack[sp - 1]);
+                case PRINT -> out.accept(Interpreter.stringify(stack[--sp]));
+                case JUMP -> ip += readShort(code, ip) + 2;
+                case JUMP_IF_FALSE -> {
+                    if (isTruthy(stack[sp - 1])) ip += 2;
+                    else ip += readShort(code, ip) + 2;
+                }
+                case LOOP -> ip -= readShort(code, ip) - 2;
+                case CALL, INVOKE, SUPER_INVOKE -> {
+                    this.sp = sp;
+                    int callers = frameCount;
+                    if (instruction == CALL) {
+                        frameIps[frameCount - 1] = ip + 1;
+                        int argCount = code[ip] & 0xff;
+                        callValue(stack[sp - 1 - argCount], argCount, closure.prototype.chunk.lines[ip]);
+                    } else if (instruction == INVOKE) {
+                        frameIps[frameCount - 1] = ip + 3;
+                        invoke((Symbol) constants[readShort(code, ip)], code[ip + 2] & 0xff, closure, ip);
+                    } else {
+                        frameIps[frameCount - 1] = ip + 3;
+                        Klass superclass = (Klass) stack[--this.sp];
+                        Symbol name = (Symbol) constants[readShort(code, ip)];
+                        invokeFromClass(superclass, name, code[ip + 2] & 0xff, closure, ip);
+                    }
+                    // A call in tail position takes over the frame of its caller.
+                    if (frameCount > callers && code[frameIps[callers - 1]] == RETURN)
+                        replaceCaller();
+                    stack = this.stack;
+                    sp = this.sp;
+                    closure = frameClosures[frameCount - 1];
+                    code = closure.prototype.chunk.code;
+                    constants = closure.prototype.chunk.constants();
+                    ip = frameIps[frameCount - 1];
+                    base = frameBases[frameCount - 1];
+                }
+                case CLOSURE -> {
+                    Prototype prototype = (Prototype) constants[readShort(code, ip)];
+                    ip += 2;
+                    Closure created = new Closure(prototype);
+                    stack[sp++] = created;
+                    for (int i = 0; i < created.upvalues.length; ++i) {
+                        boolean isLocal = code[ip++] == 1;
+                        int index = code[ip++] & 0xff;
+                        created.upvalues[i] = isLocal ? captureUpvalue(base + index) : closure.upvalues[index];
+                    }
+                }
+                case CLOSE_UPVALUE -> {
+                    closeUpvalues(sp - 1);
+                    --sp;
+                }
+                case RETURN -> {
+                    Object result = stack[--sp];
+                    closeUpvalues(base);
+                    --frameCount;
+                    Arrays.fill(stack, base, sp, null);
+                    sp = base;
+                    if (frameCount == 0) {
+                        this.sp = sp;
+                        return;
+                    }
+
+                    stack[sp++] = result;
+                    closure = frameClosures[frameCount - 1];
+                    code = closure.prototype.chunk.code;
+                    constants = closure.prototype.chunk.constants();
+                    ip = frameIps[frameCount - 1];
+                    base = frameBases[frameCount - 1];
+                }
+                case CLASS -> {
+                    stack[sp++] = new Klass(((Symbol) constants[readShort(code, ip)]).name);
+                    ip += 2;
+                }
+                case INHERIT -> {
+                    if (!(stack[sp - 2] instanceof Klass superclass))
+                        throw error(closure, ip, "Superclass must be a class.");
+                    Klass subclass = (Klass) stack[--sp];
+                    subclass.methods.putAll(superclass.methods);
+                    subclass.initializer = superclass.initializer;
+                }
+                case METHOD -> {
+                    Symbol name = (Symbol) constants[readShort(code, ip)];
+                    ip += 2;
+                    Closure method = (Closure) stack[--sp];
+                    Klass klass = (Klass) stack[sp - 1];
+                    klass.methods.put(name, method);
+                    if (name == Symbol.INIT) klass.initializer = method;
+                }
+                default -> throw new IllegalStateException("Unknown opcode " + instruction);
+            }
+        }
+    }
+
+    private void callValue(Object callee, int argCount, int line) {
+        if (callee instanceof Closure closure) {
+            call(closure, argCount, line);
+        } else if (callee instanceof BoundMethod bound) {
+            stack[sp - 1 - argCount] = bound.receiver;
+            call(bound.method, argCount, line);
+        } else if (callee instanceof Klass klass) {
+            stack[sp - 1 - argCount] = new Instance(klass);
+            if (klass.initializer != null)
+                call(klass.initializer, argCount, line);
+            else if (argCount != 0)
+                throw new RuntimeError(line, "Expected 0 arguments, but got " + argCount + ".");
+        } else if (callee instanceof Native fn) {
+            if (argCount != fn.arity)
+                throw new RuntimeError(line, "Expected " + fn.arity + " arguments, but got " + argCount + ".");
+            Object[] arguments = Arrays.copyOfRange(stack, sp - argCount, sp);
+            Object result = fn.call(arguments);
+            sp -= argCount;
+            stack[sp - 1] = result;
+        } else {
+            throw new RuntimeError(line, "Can only call functions and classes.");
+        }
+    }
+
+    /* ip points at the name operand, the argument count after it carries the line of the call. */
+    private void invoke(Symbol name, int argCount, Closure caller, int ip) {
+        if (!(stack[sp - 1 - argCount] instanceof Instance instance))
+            throw error(caller, ip + 1, "Only instances have properties.");
+
+        Object field = instance.fields.get(name);
+        if (field != null || instance.fields.containsKey(name)) {
+            stack[sp - 1 - argCount] = field;
+            callValue(field, argCount, caller.prototype.chunk.lines[ip + 2]);
+            return;
+        }
+        invokeFromClass(instance.klass, name, argCount, caller, ip);
+    }
+
+    private void invokeFromClass(Klass klass, Symbol name, int argCount, Closure caller, int ip) {
+        Closure method = klass.methods.get(name);
+        if (method == null)
+            throw error(caller, ip + 1, "Undefined property '" + name + "'");
+        call(method, argCount, caller.prototype.chunk.lines[ip + 2]);
+    }
+
+    private void call(Closure closure, int argCount, int line) {
+        if (argCount != closure.prototype.arity)
+            throw new RuntimeError(line,
+                    "Expected " + closure.prototype.arity + " arguments, but got " + argCount + ".");
+        if (frameCount == FRAMES_MAX)
+            throw new RuntimeError(line, "Stack overflow.");
+
+        if (frameCount == frameClosures.length) {
+            frameClosures = Arrays.copyOf(frameClosures, frameCount * 2);
+            frameIps = Arrays.copyOf(frameIps, frameCount * 2);
+            frameBases = Arrays.copyOf(frameBases, frameCount * 2);
+        }
+        int base = sp - argCount - 1;
+        if (base + closure.prototype.maxStack > stack.length)
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, base + closure.prototype.maxStack));
+
+        frameClosures[frameCount] = closure;
+        frameIps[frameCount] = 0;
+        frameBases[frameCount] = base;
+        ++frameCount;
+    }
+
+    /* Moves the frame just pushed down over its caller, which has nothing left to do but return its result. */
+    private void replaceCaller() {
+        int callee = frameCount - 1;
+        int from = frameBases[callee];
+        int to = frameBases[callee - 1];
+        closeUpvalues(to);
+        System.arraycopy(stack, from, stack, to, sp - from);
+        Arrays.fill(stack, sp - (from - to), sp, null);
+        sp -= from - to;
+        frameClosures[callee - 1] = frameClosures[callee];
+        frameIps[callee - 1] = frameIps[callee];
+        frameBases[callee - 1] = to;
+        frameClosures[callee] = null;
+        --frameCount;
+    }
+
+    private Upvalue captureUpvalue(int slot) {
+        Upvalue previous = null;
+        Upvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot) return upvalue;
+
+        Upvalue created = new Upvalue(slot);
+        created.next = upvalue;
+        if (previous == null) openUpvalues = created;
+        else previous.next = created;
+        return created;
+    }
+
+    private void closeUpvalues(int last) {
+        while (openUpvalues != null && openUpvalues.slot >= last) {
+            Upvalue upvalue = openUpvalues;
+            upvalue.value = stack[upvalue.slot];
+            upvalue.slot = -1;
+            openUpvalues = upvalue.next;
+            upvalue.next = null;
+        }
+    }
+
+    private static double number(Closure closure, int ip, Object operand) {
+        if (operand instanceof Double d) return d;
+        throw error(closure, ip, "Operand must me a number.");
+    }
+
+    private static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean bool) return bool;
+        return true;
+    }
+
+    private static int readShort(byte[] code, int ip) {
+        return ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+    }
+
+    private static RuntimeError error(Closure closure, int ip, String message) {
+        return new RuntimeError(closure.prototype.chunk.lines[ip - 1], message);
+    }
+
+    /* Compiled function: its code and what the VM needs to set up a frame for it. */
+    static final class Prototype {
+        final String name;
+        final Chunk chunk = new Chunk();
+        int arity;
+        int upvalueCount;
+        int maxStack;
+
+        Prototype(String name) {this.name = name;}
+
+        @Override public String toString() {
+            return name == null ? "<script>" : "<fn " + name + ">";
+        }
+    }
+
+    static final class Closure {
+        final Prototype prototype;
+        final Upvalue[] upvalues;
+
+        Closure(Prototype prototype) {
+            this.prototype = prototype;
+            this.upvalues = new Upvalue[prototype.upvalueCount];
+        }
+
+        @Override public String toString() {return prototype.toString();}
+    }
+
+    /* Points at a stack slot while the variable is alive, holds the value itself once it is closed. */
+    static final class Upvalue {
+        int slot;
+        Object value;
+        Upvalue next;
+
+        Upvalue(int slot) {this.slot = slot;}
+    }
+
+    static final class Klass {
+        final String name;
+        final Map<Symbol, Closure> methods = new HashMap<>();
+        Closure initializer;
+
+        Klass(String name) {this.name = name;}
+
+        @Override public String toString() {return name;}
+    }
+
+    static final class Instance {
+        final Klass klass;
+        final Map<Symbol, Object> fields = new HashMap<>();
+
+        Instance(Klass klass) {this.klass = klass;}
+
+        @Override public String toString() {return klass.name + " instance";}
+    }
+
+    static final class BoundMethod {
+        final Instance receiver;
+        final Closure method;
+
+        BoundMethod(Instance receiver, Closure method) {
+            this.receiver = receiver;
+            this.method = method;
+        }
+
+        @Override public String toString() {return method.toString();}
+    }
+
+    abstract static class Native {
+        final String name;
+        final int arity;
+
+        Native(String name, int arity) {
+            this.name = name;
+            this.arity = arity;
+        }
+
+        abstract Object call(Object[] arguments);
+
+        @Override public String toString() {return "<native fn>";}
+    }
+}
@@ -3,7 +3,9 @@ package tools;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.joining;
@@ -17,31 +19,31 @@ class ASTGenerator {
         }
         String outputDir = args[0];
         defineAst(outputDir, "Expr", List.of(
-                "Assign:   Token name, Expr value",
-                "Binary:   Expr left, Token operator, Expr right",
+                "Assign:   Token name, Expr value | int depth = -1, int slot",
+                "Binary:   Expr left, Token operator, Expr right | | Specialization specialization = Specialization.UNINITIALIZED",
                 "Call:     Expr callee, Token paren, List<Expr> arguments",
-                "Get:      Expr object, Token name",
+                "Get:      Expr object, Token name | | PropertyCache cache = PropertyCache.EMPTY",
                 "Grouping: Expr expression",
                 "Literal:  Object value",
-                "Logical:  Expr left, Token operator, Expr right",
-                "Set:      Expr object, Token name, Expr value",
-                "Super:    Token keyword, Token method",
-                "This:     Token keyword",
-                "Unary:    Token operator, Expr right",
-                "Variable: Token name"
-        ), List.of("import java.util.List;"));
+                "Logical:  Expr left, Token operator, Expr right | | Specialization specialization = Specialization.UNINITIALIZED",
+                "Set:      Expr object, Token name, Expr value | | PropertyCache cache = PropertyCache.EMPTY",
+                "Super:    Token keyword, Token method | int depth = -1",
+                "This:     Token keyword | int depth = -1, int slot",
+                "Unary:    Token operator, Expr right | | Specialization specialization = Specialization.UNINITIALIZED",
+                "Variable: Token name | int depth = -1, int slot"
+        ), List.of("import java.io.IOException;", "import java.util.List;"));
 
         defineAst(outputDir, "Stmt", List.of(
-                "Block      : List<Stmt> statements",
-                "Class      : Token name, Expr.Variable superClass, List<Stmt.Function> methods",
+                "Block      : List<Stmt> statements | int slots",
+                "Class      : Token name, Expr.Variable superClass, List<Stmt.Function> methods | | Shape shape = new Shape()",
                 "Expression : Expr expression",
-                "Function   : Token name, List<Token> params, List<Stmt> body",
-                "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
-                "Print      : Expr expression",
-                "Return     : Token keyword, Expr value",
+                "Function   : Token name, List<Token> params, List<Stmt> body | int slots | int calls, JitFunction compiled",
+                "If         : Token keyword, Expr condition, Stmt thenBranch, Stmt elseBranch",
+                "Print      : Token keyword, Expr expression",
+                "Return     : Token keyword, Expr value | boolean tailCall",
                 "Var        : Token name, Expr initializer",
-                "While      : Expr condition, Stmt body"
-        ), List.of("import java.util.List;"));
+                "While      : Token keyword, Expr condition, Stmt body"
+        ), List.of("import java.io.IOException;", "import java.util.List;"));
     }
 
     private static void defineAst(String outputDir, String baseName, List<String> types, List<String> imports) throws IOException {
@@ -56,12 +58,15 @@ class ASTGenerator {
             writer.println("abstract sealed class " + baseName + permits(baseName, types) + " {");
             writer.println();
             writer.println("    abstract <R> R accept(Visitor<R> visitor);");
+            writer.println();
+            writer.println("    abstract void write(AstWriter out) throws IOException;");
 
             defineVisitor(writer, baseName, types);
-            for (String type : types) {
-                var className = type.split(":")[0].trim();
-                var fields = type.split(":")[1].trim();
-                defineType(writer, baseName, className, fields);
+            defineRead(writer, baseName, types);
+            for (int i = 0; i < types.size(); ++i) {
+                var className = types.get(i).split(":")[0].trim();
+                var fields = types.get(i).split(":")[1].trim();
+                defineType(writer, baseName, className, fields, i + 1);
             }
             writer.println("}");
         }
@@ -84,9 +89,35 @@ class ASTGenerator {
         writer.println(tab.repeat(nesting) + "}");
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fields) {
+    /* Nodes are written behind a tag numbering their class from 1, 0 stands for null. */
+    private static void defineRead(PrintWriter writer, String baseName, List<String> types) {
+        String tab = " ".repeat(4);
+        writer.println();
+        writer.println(tab + "static " + baseName + " read(AstReader in) throws IOException {");
+        writer.println(tab.repeat(2) + "return switch (in.readByte()) {");
+        writer.println(tab.repeat(3) + "case 0 -> null;");
+        for (int i = 0; i < types.size(); ++i) {
+            var className = types.get(i).split(":")[0].trim();
+            writer.println(tab.repeat(3) + "case " + (i + 1) + " -> " + className + ".read(in);");
+        }
+        writer.println(tab.repeat(3) + "default -> throw new IOException(\"Unknown " + baseName + " node.\");");
+        writer.println(tab.repeat(2) + "};");
+        writer.println(tab + "}");
+    }
+
+    /*
+     * Fields after '|' are not passed to the constructor, the Resolver and the Interpreter fill them in later.
+     * Those up to a second '|' are the Resolver's and are written with the node, the ones after it are caches that
+     * a node read back starts out without.
+     */
+    private static void defineType(PrintWriter writer, String baseName, String className, String spec, int tag) {
         String tab = " ".repeat(4);
         int nesting = 1;
+        var sections = spec.split("\\|", -1);
+        var fields = sections[0].trim();
+        var resolvedFields = sections.length > 1 ? sections[1].trim() : "";
+        var cacheFields = sections.length > 2 ? sections[2].trim() : "";
+        var mutableFields = Stream.of(resolvedFields, cacheFields).filter(f -> !f.isEmpty()).collect(joining(", "));
         // define class
         writer.println();
         writer.println(tab.repeat(nesting) + "static final class " + className + " extends " + baseName + " {");
@@ -95,6 +126,11 @@ class ASTGenerator {
         for (String field : fields.split(",")) {
             writer.println(tab.repeat(nesting) + "final " + field.trim() + ";");
         }
+        if (!mutableFields.isEmpty()) {
+            for (String field : mutableFields.split(",")) {
+                writer.println(tab.repeat(nesting) + field.trim() + ";");
+            }
+        }
         // define constructor: start
         writer.println();
         writer.println(tab.repeat(nesting) + className + "(" + fields + ") {");
@@ -114,9 +150,83 @@ class ASTGenerator {
         --nesting;
         writer.println(tab.repeat(nesting) + "}");
         // implement visitor: finish
+        var written = resolvedFields.isEmpty() ? List.<String>of() : Arrays.stream(resolvedFields.split(","))
+                .map(field -> field.split("=")[0].trim())
+                .toList();
+        // serialization: start
+        writer.println();
+        writer.println(tab.repeat(nesting) + "@Override void write(AstWriter out) throws IOException {");
+        ++nesting;
+        writer.println(tab.repeat(nesting) + "out.writeByte(" + tag + ");");
+        for (String field : fields.split(",")) {
+            var type = field.trim().split(" ")[0];
+            var name = field.trim().split(" ")[1];
+            if (type.startsWith("List<")) {
+                var element = type.substring("List<".length(), type.length() - 1);
+                writer.println(tab.repeat(nesting) + "out.writeInt(" + name + ".size());");
+                writer.println(tab.repeat(nesting) + "for (" + element + " element : " + name + ") "
+                        + write(element, "element"));
+            } else {
+                writer.println(tab.repeat(nesting) + write(type, name));
+            }
+        }
+        for (String field : written) {
+            writer.println(tab.repeat(nesting) + write(field.split(" ")[0], field.split(" ")[1]));
+        }
+        --nesting;
+        writer.println(tab.repeat(nesting) + "}");
+
+        writer.println();
+        writer.println(tab.repeat(nesting) + "static " + className + " read(AstReader in) throws IOException {");
+        ++nesting;
+        var arguments = Arrays.stream(fields.split(","))
+                .map(field -> read(field.trim().split(" ")[0]))
+                .collect(joining(", "));
+        var construction = "new " + className + "(" + arguments + ")";
+        if (written.isEmpty()) {
+            writer.println(tab.repeat(nesting) + "return " + construction + ";");
+        } else {
+            writer.println(tab.repeat(nesting) + className + " node = " + construction + ";");
+            for (String field : written) {
+                writer.println(tab.repeat(nesting) + "node." + field.split(" ")[1] + " = " + read(field.split(" ")[0]) + ";");
+            }
+            writer.println(tab.repeat(nesting) + "return node;");
+        }
+        --nesting;
+        writer.println(tab.repeat(nesting) + "}");
+        // serialization: finish
         writer.println(tab + "}");
     }
 
+    private static String write(String type, String name) {
+        return switch (type) {
+            case "Token" -> "out.writeToken(" + name + ");";
+            case "Object" -> "out.writeValue(" + name + ");";
+            case "int" -> "out.writeInt(" + name + ");";
+            case "boolean" -> "out.writeBoolean(" + name + ");";
+            default -> (type.startsWith("Expr") ? "out.writeExpr(" : "out.writeStmt(") + name + ");";
+        };
+    }
+
+    private static String read(String type) {
+        if (type.startsWith("List<")) {
+            var element = type.substring("List<".length(), type.length() - 1);
+            return switch (element) {
+                case "Token" -> "in.readList(AstReader::readToken)";
+                case "Expr", "Stmt" -> "in.readList(" + element + "::read)";
+                default -> "in.readList(reader -> (" + element + ") " + element.split("\\.")[0] + ".read(reader))";
+            };
+        }
+        return switch (type) {
+            case "Token" -> "in.readToken()";
+            case "Object" -> "in.readValue()";
+            case "int" -> "in.readInt()";
+            case "boolean" -> "in.readBoolean()";
+            case "Expr", "Stmt" -> type + ".read(in)";
+            default -> "(" + type + ") " + type.split("\\.")[0] + ".read(in)";
+        };
+    }
+
     private static String permits(String baseName, List<String> types) {
         return " permits " + types.stream()
                 .map(t -> t.split(":")[0].trim())
@@ -0,0 +1,66 @@
+package jlox;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static jlox.TokenType.EOF;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ByteScannerTest {
+
+    @TempDir Path directory;
+
+    @Test void nextToken_scansLikeScanner() throws IOException {
+        String source = """
+                class A < B { init(x) { this.x = x >= 1.5 and !nil; } }
+                fun f() { return super.g(fo, fort, fun_, thisx, tru, "s") != 12 or i <= 0; }
+                var w = -a / b * c + d == e; // comment
+                while (false) print true;
+                for (;;) if (x > y or x < y) {} else {}
+                """;
+
+        assertThat(scan(source)).isEqualTo(new Scanner(source).scanTokens());
+    }
+
+    @Test void nextToken_fallsBackOutsideAscii() throws IOException {
+        String source = """
+                var a = "plain";
+                // \u00fcn\u00efcode comment
+                var b = "na\u00efve
+                text";
+                print b;
+                """;
+
+        assertThat(scan(source)).isEqualTo(new Scanner(source).scanTokens());
+    }
+
+    @Test void nextToken_readsPastItsWindow() throws IOException {
+        String source = "var s = \"" + "x".repeat(100_000) + "\";\n"
+                + "print value_1 + 12345.678;\n".repeat(10_000)
+                + "// " + "\u00fc".repeat(50_000) + "\nprint s;";
+
+        assertThat(scan(source)).isEqualTo(new Scanner(source).scanTokens());
+    }
+
+    private List<Token> scan(String source) throws IOException {
+        Path path = Files.writeString(directory.resolve("script.lox"), source, UTF_8);
+        try (FileChannel channel = FileChannel.open(path)) {
+            ByteScanner scanner = new ByteScanner(channel);
+            List<Token> tokens = new ArrayList<>();
+            Token token;
+            do {
+                token = scanner.nextToken();
+                tokens.add(token);
+            } while (token.type() != EOF);
+            return tokens;
+        }
+    }
+}
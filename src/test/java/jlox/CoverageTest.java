@@ -0,0 +1,98 @@
+package jlox;
+
+import extension.StdExtension;
+import extension.StdOut;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(StdExtension.class)
+class CoverageTest {
+
+    private static final String SOURCE = """
+            fun twice(n) {
+              return n * 2;
+            }
+            var sum = 0;
+            for (var i = 0; i < 3; i = i + 1) {
+              sum = sum + twice(i);
+            }
+            if (sum > 100) {
+              print "big";
+            }
+            print sum;
+            """;
+
+    @StdOut ByteArrayOutputStream stdOut;
+    @TempDir Path directory;
+
+    @Test void lcov_countsEachLineAsItExecutes() {
+        Coverage coverage = run(SOURCE);
+        StringWriter out = new StringWriter();
+
+        coverage.lcov("script.lox", new PrintWriter(out, true));
+
+        assertThat(stdOut.toString()).isEqualTo("6\n");
+        assertThat(out.toString()).isEqualTo("""
+                TN:
+                SF:script.lox
+                DA:1,1
+                DA:2,3
+                DA:4,1
+                DA:5,5
+                DA:6,3
+                DA:8,1
+                DA:9,0
+                DA:11,1
+                LF:8
+                LH:7
+                end_of_record
+                """);
+    }
+
+    @Test void hottest_ordersLinesByCount() {
+        Coverage coverage = run(SOURCE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        coverage.hottest(SOURCE.lines().toList(), new PrintStream(out, true));
+
+        assertThat(out.toString().lines().limit(3)).containsExactly(
+                "Hottest lines:",
+                "       5            5  for (var i = 0; i < 3; i = i + 1) {",
+                "       2            3  return n * 2;");
+    }
+
+    @Test void line_isTheFirstTokenOfTheStatement() {
+        List<Stmt> statements = resolve("""
+                var a;
+                print
+                  "text";
+                a
+                  = 1;
+                "tokens";
+                """);
+
+        assertThat(statements).extracting(Coverage::line).containsExactly(1, 2, 4, 0);
+    }
+
+    private Coverage run(String source) {
+        Coverage coverage = new Coverage(directory.resolve("lcov.info"));
+        new CountingInterpreter(coverage, new Reporter(ErrorSink.STDERR), Interpreter.STDOUT).interpret(resolve(source));
+        return coverage;
+    }
+
+    private static List<Stmt> resolve(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source)).parse();
+        new Resolver().resolve(statements);
+        return statements;
+    }
+}
@@ -0,0 +1,65 @@
+package jlox;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static jlox.TokenType.EOF;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventsTest {
+
+    @TempDir Path directory;
+
+    @Test void call_isRecordedOverItsThreshold() throws IOException {
+        Stmt.Function declaration = (Stmt.Function) new Parser(new Scanner("\nfun slow() {}")).parse().get(0);
+
+        List<RecordedEvent> fast = record(Duration.ofHours(1), () -> Events.Call.start().finish(declaration));
+        List<RecordedEvent> slow = record(Duration.ZERO, () -> Events.Call.start().finish(declaration));
+
+        assertThat(fast).isEmpty();
+        assertThat(slow).singleElement().satisfies(event -> {
+            assertThat(event.getEventType().getName()).isEqualTo("jlox.Call");
+            assertThat(event.getString("function")).isEqualTo("slow");
+            assertThat(event.getInt("line")).isEqualTo(2);
+        });
+    }
+
+    @Test void phase_timesTheScannerUnderAParse() throws IOException {
+        List<RecordedEvent> events = record(Duration.ZERO, () -> {
+            Events.Phase parse = new Events.Phase("parse");
+            parse.begin();
+            TokenSource tokens = parse.scanned(new Scanner("print 1 + 2;"));
+            while (tokens.nextToken().type() != EOF) {}
+            Events.end(parse);
+        });
+
+        assertThat(events).singleElement().satisfies(event -> {
+            assertThat(event.getEventType().getName()).isEqualTo("jlox.Phase");
+            assertThat(event.getString("phase")).isEqualTo("parse");
+            assertThat(event.getDuration("scanning")).isPositive().isLessThanOrEqualTo(event.getDuration());
+        });
+    }
+
+    private List<RecordedEvent> record(Duration threshold, Runnable work) throws IOException {
+        Path file = directory.resolve("recording.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("jlox.Call").withThreshold(threshold);
+            recording.enable("jlox.Phase");
+            recording.start();
+            work.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().startsWith("jlox."))
+                .toList();
+    }
+}
@@ -0,0 +1,9 @@
+package jlox;
+
+import org.junit.jupiter.api.BeforeEach;
+
+// Same programs, with every function compiled on its first call.
+class JitLoxClassTest extends LoxClassTest {
+
+    @BeforeEach void compileEagerly() {lox = new Lox(false, 1);}
+}
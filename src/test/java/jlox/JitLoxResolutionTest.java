@@ -0,0 +1,9 @@
+package jlox;
+
+import org.junit.jupiter.api.BeforeEach;
+
+// Same programs, with every function compiled on its first call.
+class JitLoxResolutionTest extends LoxResolutionTest {
+
+    @BeforeEach void compileEagerly() {lox = new Lox(false, 1);}
+}
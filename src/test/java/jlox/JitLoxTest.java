@@ -0,0 +1,35 @@
+package jlox;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Same programs, with every function compiled on its first call.
+class JitLoxTest extends LoxTest {
+
+    @BeforeEach void compileEagerly() {lox = new Lox(false, 1);}
+
+    @Test void calls_stopCountingAtTheThreshold() {
+        List<Stmt> statements = new Parser(new Scanner("""
+                fun nested() { fun inner() {} }
+                fun flat() {}
+                for (var i = 0; i < 5; i = i + 1) { nested(); flat(); }
+                """)).parse();
+        new Resolver().resolve(statements);
+        Interpreter interpreter = new Interpreter();
+        interpreter.jit = true;
+        interpreter.jitThreshold = 2;
+
+        interpreter.interpret(statements);
+
+        Stmt.Function nested = (Stmt.Function) statements.get(0);
+        Stmt.Function flat = (Stmt.Function) statements.get(1);
+        assertThat(nested.calls).isEqualTo(2);
+        assertThat(nested.compiled).isNull();
+        assertThat(flat.calls).isEqualTo(2);
+        assertThat(flat.compiled).isNotNull();
+    }
+}
@@ -16,6 +16,7 @@ class LoxClassTest {
 
     @StdOut ByteArrayOutputStream stdOut;
     @StdErr ByteArrayOutputStream stdErr;
+    Lox lox = new Lox();
 
     @Test void classDeclaration() {
         var source = """
@@ -28,7 +29,7 @@ class LoxClassTest {
                 print DevonshireCream;
                   """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
                 DevonshireCream
@@ -42,7 +43,7 @@ class LoxClassTest {
                 print bagel;
                   """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
                 Bagel instance
@@ -57,7 +58,7 @@ class LoxClassTest {
                 print bagel.field;
                   """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
                 value
@@ -74,7 +75,7 @@ class LoxClassTest {
                 Bacon().eat();
                   """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
                 Crunch crunch crunch!
@@ -95,7 +96,7 @@ class LoxClassTest {
                 cake.taste();
                   """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
                 The German chocolate cake is delicious!
@@ -114,7 +115,7 @@ class LoxClassTest {
                 print foo.init();
                   """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
                 Foo instance
@@ -138,7 +139,7 @@ class LoxClassTest {
                 BostonCream().toOverride();
                   """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
                 Fry until golden brown.
@@ -158,10 +159,157 @@ class LoxClassTest {
                 C().test();
                   """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
                 A method
                 """);
     }
+
+    @Test void thisInSubclass() {
+        var source = """
+                class A { init(name) { this.name = name; } }
+                class B < A {
+                    init(name) {
+                        super.init(name);
+                        this.count = 1;
+                    }
+                    describe() {
+                        print this.name;
+                        print this.count;
+                    }
+                }
+
+                B("b").describe();
+                """;
+
+        lox.run(source);
+
+        assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
+                b
+                1
+                """);
+    }
+
+    @Test void fieldsOfDifferentShapes() {
+        var source = """
+                class A { name() { return "method"; } }
+                class B {}
+                fun describe(o) { return o.name; }
+
+                var a1 = A(); a1.name = "a1";
+                var a2 = A(); a2.other = 0; a2.name = "a2";
+                var b = B(); b.name = "b";
+                var c = B(); c.x = 1; c.y = 2; c.z = 3; c.name = "c";
+                var d = B(); d.z = 1; d.name = "d";
+                print describe(a1);
+                print describe(a2);
+                print describe(b);
+                print describe(c);
+                print describe(d);
+                print describe(A())();
+                print describe(a1);
+                a1.name = "a1 again";
+                print describe(a1);
+                print c.x + c.y + c.z;
+                """;
+
+        lox.run(source);
+
+        assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
+                a1
+                a2
+                b
+                c
+                d
+                method
+                a1
+                a1 again
+                6
+                """);
+    }
+
+    @Test void methodsInheritedThroughSeveralClasses() {
+        var source = """
+                class A {
+                    init(name) { this.name = name; }
+                    hello() { print "hello " + this.name; }
+                    who() { print "A"; }
+                }
+                class B < A { who() { print "B"; } }
+                class C < B {}
+                class D < C {}
+
+                var d = D("d");
+                d.hello();
+                d.who();
+                """;
+
+        lox.run(source);
+
+        assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
+                hello d
+                B
+                """);
+    }
+
+    @Test void methodsCalledDirectlyOrTakenAsValues() {
+        var source = """
+                class A {
+                    init(name) { this.name = name; }
+                    greet(greeting) { return greeting + " " + this.name; }
+                }
+                class B < A {
+                    greet(greeting) { return super.greet(greeting) + "!"; }
+                }
+                fun shout(text) { return text + "!!"; }
+
+                var b = B("b");
+                print b.greet("hi");
+                var greet = b.greet;
+                b.name = "changed";
+                print greet("hey");
+                b.greet = shout;
+                print b.greet("field");
+                print A("a").init("again").name;
+                """;
+
+        lox.run(source);
+
+        assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
+                hi b!
+                hey changed!
+                field!!
+                again
+                """);
+    }
+
+    @Test void callsWithManyArguments() {
+        var source = """
+                class Sum {
+                    init(a, b, c, d) { this.total = a + b + c + d; }
+                    add(a, b, c, d, e) { return this.total + a + b + c + d + e; }
+                }
+                fun sum(a, b, c, d, e, f) { return a + b + c + d + e + f; }
+
+                var s = Sum(1, 2, 3, 4);
+                print s.add(1, 1, 1, 1, 1);
+                var add = s.add;
+                print add(2, 2, 2, 2, 2);
+                print sum(1, 2, 3, 4, 5, 6);
+                s.add(1, 2, 3, 4);
+                """;
+
+        lox.run(source);
+
+        assertThat(stdOut.toString()).isEqualTo("""
+                15
+                20
+                21
+                """);
+        assertThat(stdErr.toString()).isEqualTo("""
+                Expected 5 arguments, but got 4.
+                [line 12]
+                """);
+    }
 }
@@ -0,0 +1,127 @@
+package jlox;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoxEngineTest {
+
+    private final LoxEngine engine = new LoxEngine();
+    private final List<String> errors = new ArrayList<>();
+    private final ErrorSink sink = new ErrorSink() {
+        @Override public void compileError(int line, String where, String message) {
+            errors.add(line + where + ":" + message);
+        }
+
+        @Override public void runtimeError(int line, String message) {
+            errors.add(line + ":" + message);
+        }
+    };
+
+    @Test void run_sharesAProgramBetweenThreads() throws Exception {
+        LoxEngine.Program program = engine.compile("""
+                class Point {
+                  init(x, y) { this.x = x; this.y = y; }
+                  sum() { return this.x + this.y; }
+                }
+                fun total(n) {
+                  var sum = 0;
+                  for (var i = 0; i < n; i = i + 1) sum = sum + Point(i, 1).sum();
+                  return sum;
+                }
+                var result = 0;
+                for (var i = 0; i < 1500; i = i + 1) result = total(10);
+                print result;
+                print "done";
+                """, sink);
+
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> outputs = new ArrayList<>();
+            for (int i = 0; i < 16; ++i) {
+                outputs.add(threads.submit(() -> {
+                    StringWriter out = new StringWriter();
+                    assertThat(engine.newContext(out, sink).run(program)).isTrue();
+                    return out.toString();
+                }));
+            }
+            for (Future<String> output : outputs) assertThat(output.get()).isEqualTo("55\ndone\n");
+        } finally {
+            threads.shutdown();
+        }
+        assertThat(errors).isEmpty();
+    }
+
+    @Test void run_keepsGlobalsOfItsContext() {
+        StringWriter out = new StringWriter();
+        LoxEngine.Context context = engine.newContext(out, sink);
+        LoxEngine.Context other = engine.newContext(new StringWriter(), sink);
+
+        context.run(engine.compile("var greeting = \"hi\";", sink));
+        context.run(engine.compile("print greeting;", sink));
+
+        assertThat(out.toString()).isEqualTo("hi\n");
+        assertThat(other.run(engine.compile("print greeting;", sink))).isFalse();
+        assertThat(errors).containsExactly("1:Undefined variable 'greeting'.");
+    }
+
+    @Test void run_keepsInlineCachesFromOneContextToTheNext() {
+        LoxEngine.Program program = engine.compile("""
+                class Point { init(x) { this.x = x; } getX() { return this.x; } }
+                print Point(1).getX();
+                """, sink);
+
+        for (int i = 0; i < 2 * PropertyCache.MAX_SHAPES; ++i)
+            assertThat(engine.newContext(new StringWriter(), sink).run(program)).isTrue();
+
+        Expr.Call call = (Expr.Call) ((Stmt.Print) program.statements.get(1)).expression;
+        assertThat(((Expr.Get) call.callee).cache.isMegamorphic()).isFalse();
+        Stmt.Function init = ((Stmt.Class) program.statements.get(0)).methods.get(0);
+        Expr.Set set = (Expr.Set) ((Stmt.Expression) init.body.get(0)).expression;
+        assertThat(set.cache.isMegamorphic()).isFalse();
+    }
+
+    @Test void run_reportsRuntimeErrorsToItsSink() {
+        StringWriter out = new StringWriter();
+
+        boolean completed = engine.newContext(out, sink).run(engine.compile("print 1;\nprint nil.x;", sink));
+
+        assertThat(completed).isFalse();
+        assertThat(out.toString()).isEqualTo("1\n");
+        assertThat(errors).containsExactly("2:Only instances have properties.");
+    }
+
+    @Test void symbol_isInternedInTheEngine() {
+        LoxEngine other = new LoxEngine();
+
+        assertThat(engine.symbol("name")).isSameAs(engine.symbol("name"))
+                .isNotSameAs(other.symbol("name"))
+                .isNotSameAs(Symbol.of("name"));
+        assertThat(other.symbol("init")).isSameAs(engine.symbol("init")).isSameAs(Symbol.INIT);
+    }
+
+    @Test void compile_reportsEveryErrorToItsSink() {
+        LoxEngine.Program program = engine.compile("var = 1;\nprint 2", sink);
+
+        assertThat(program).isNull();
+        assertThat(errors).containsExactly("1'=':Expect variable name.", "2 at end:Expect ';' after value.");
+    }
+
+    @Test void compile_reportsResolutionErrorsToItsSink() {
+        assertThat(engine.compile("class A < A {}", sink)).isNull();
+        assertThat(engine.compile("print this;", sink)).isNull();
+        assertThat(engine.compile("class A { init() { return 1; } }", sink)).isNull();
+
+        assertThat(errors).containsExactly(
+                "1'A':A class can't inherit from itself.",
+                "1'this':Can't use 'this' outside a class.",
+                "1'return':Can't return a value from an initializer.");
+    }
+}
@@ -16,6 +16,7 @@ class LoxResolutionTest {
 
     @StdOut ByteArrayOutputStream stdOut;
     @StdErr ByteArrayOutputStream stdErr;
+    Lox lox = new Lox();
 
     @Test void variableAlreadyDeclared() {
         var source = """
@@ -25,7 +26,7 @@ class LoxResolutionTest {
                  }
                   """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdErr.toString()).as(stdOut.toString()).isEqualTo("""
                 [line 3] Error'myVar':Already a variable with this name in this scope.
@@ -37,7 +38,7 @@ class LoxResolutionTest {
                 return "at top level";
                   """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdErr.toString()).as(stdOut.toString()).isEqualTo("""
                 [line 1] Error'return':Can't return from top level code.
@@ -0,0 +1,131 @@
+package jlox;
+
+import org.junit.jupiter.api.Test;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import java.io.StringWriter;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LoxScriptEngineTest {
+
+    private final ScriptEngine engine = new ScriptEngineManager().getEngineByName("lox");
+    private final StringWriter out = new StringWriter();
+
+    LoxScriptEngineTest() {
+        engine.getContext().setWriter(out);
+    }
+
+    @Test void compiledScript_runsWithTheBindingsOfEachEval() throws ScriptException {
+        CompiledScript script = ((Compilable) engine).compile("var total = price * quantity; print name + \"!\";");
+
+        Bindings first = engine.createBindings();
+        first.put("price", 2.5);
+        first.put("quantity", 4);
+        first.put("name", "first");
+        script.eval(first);
+        Bindings second = engine.createBindings();
+        second.put("price", 1);
+        second.put("quantity", 3L);
+        second.put("name", 'x');
+        script.eval(second);
+
+        assertThat(first.get("total")).isEqualTo(10.0);
+        assertThat(second.get("total")).isEqualTo(3.0);
+        assertThat(first.get("name")).isEqualTo("first");
+        assertThat(first).doesNotContainKey("clock");
+        assertThat(out.toString()).isEqualTo("first!\nx!\n");
+    }
+
+    @Test void getParameter_reportsNoThreadSafety() {
+        assertThat(engine.getFactory().getParameter("THREADING")).isNull();
+        assertThat(engine.getFactory().getParameter(ScriptEngine.NAME)).isEqualTo("lox");
+    }
+
+    @Test void eval_seesLaterChangesToTheGlobalScope() throws ScriptException {
+        ScriptEngineManager manager = new ScriptEngineManager();
+        ScriptEngine engine = manager.getEngineByName("lox");
+        engine.getContext().setWriter(out);
+
+        manager.put("x", 1);
+        engine.put("y", 2);
+        engine.eval("print x + y;");
+        manager.put("x", 3);
+        engine.eval("print x + y; var z = x;");
+
+        assertThat(out.toString()).isEqualTo("3\n5\n");
+        assertThat(engine.getBindings(ScriptContext.ENGINE_SCOPE)).doesNotContainKey("x");
+        assertThat(engine.get("y")).isEqualTo(2);
+        assertThat(engine.get("z")).isEqualTo(3.0);
+    }
+
+    @Test void eval_handsBuiltStringsOutAsStrings() throws Exception {
+        engine.eval("var built = \"a\" + \"b\"; fun join(x) { return built + x; }");
+
+        Object built = engine.get("built");
+        Object joined = ((Invocable) engine).invokeFunction("join", "c");
+
+        assertThat(built).isInstanceOf(String.class);
+        assertThat("ab".equals(built)).isTrue();
+        assertThat(joined).isInstanceOf(String.class).isEqualTo("abc");
+        assertThat(Map.of("abc", 1).containsKey(joined)).isTrue();
+    }
+
+    @Test void invokeFunction_callsWhatAScriptDefined() throws Exception {
+        engine.eval("""
+                var greeting = "Hello, ";
+                fun greet(name) { return greeting + name; }
+                class Counter {
+                  init() { this.count = 0; }
+                  add(n) { this.count = this.count + n; return this.count; }
+                }
+                var counter = Counter();
+                """);
+        Invocable invocable = (Invocable) engine;
+
+        assertThat(invocable.invokeFunction("greet", "Lox")).isEqualTo("Hello, Lox");
+        Object counter = engine.get("counter");
+        invocable.invokeMethod(counter, "add", 2);
+        assertThat(invocable.invokeMethod(counter, "add", 3)).isEqualTo(5.0);
+        assertThatThrownBy(() -> invocable.invokeFunction("missing")).isInstanceOf(NoSuchMethodException.class);
+    }
+
+    @Test void getInterface_implementsAnInterfaceWithFunctions() throws ScriptException {
+        engine.eval("fun apply(x) { return x * 2; }");
+
+        Doubler doubler = ((Invocable) engine).getInterface(Doubler.class);
+
+        assertThat(doubler.apply(21)).isEqualTo(42.0);
+    }
+
+    @Test void eval_throwsTheErrorsOfAScript() {
+        engine.put(ScriptEngine.FILENAME, "rules.lox");
+
+        assertThatThrownBy(() -> engine.eval("var = 1;"))
+                .isInstanceOf(ScriptException.class)
+                .hasMessage("Error '=': Expect variable name. in rules.lox at line number 1");
+        assertThatThrownBy(() -> engine.eval("print 1;\nprint nil.x;"))
+                .isInstanceOfSatisfying(ScriptException.class, e -> assertThat(e.getLineNumber()).isEqualTo(2))
+                .hasMessageStartingWith("Only instances have properties.");
+        assertThat(out.toString()).isEqualTo("1\n");
+    }
+
+    @Test void compile_throwsTheResolutionErrorsOfAScript() {
+        assertThatThrownBy(() -> ((Compilable) engine).compile("print 1;\nclass A < A {}"))
+                .isInstanceOfSatisfying(ScriptException.class, e -> assertThat(e.getLineNumber()).isEqualTo(2))
+                .hasMessageStartingWith("Error 'A': A class can't inherit from itself.");
+    }
+
+    public interface Doubler {
+        Object apply(double x);
+    }
+}
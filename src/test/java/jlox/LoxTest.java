@@ -15,6 +15,7 @@ class LoxTest {
 
     @StdOut ByteArrayOutputStream stdOut;
     @StdErr ByteArrayOutputStream stdErr;
+    Lox lox = new Lox();
 
     @Test void run_printsExpressions() {
         var source = """
@@ -24,7 +25,7 @@ class LoxTest {
                 print "abc"+"cba";
                         """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat("""
                 6
@@ -44,7 +45,7 @@ class LoxTest {
                 print beverage;
                 """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
                 3
@@ -58,7 +59,7 @@ class LoxTest {
                 print a = 2;
                 """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
                 2
@@ -88,7 +89,7 @@ class LoxTest {
                 print c;
                 """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
                 inner a
@@ -111,7 +112,7 @@ class LoxTest {
                 else print b;
                  """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualToIgnoringNewLines("2");
     }
@@ -124,7 +125,7 @@ class LoxTest {
                 print "yes" and nil;
                  """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualToIgnoringNewLines("""
                 hi
@@ -142,7 +143,7 @@ class LoxTest {
                 }
                  """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualToIgnoringNewLines("""
                 2
@@ -159,7 +160,7 @@ class LoxTest {
                 }
                   """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualToIgnoringNewLines("""
                 0
@@ -178,7 +179,7 @@ class LoxTest {
                 count(3);
                   """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualToIgnoringNewLines("""
                 <fn count>
@@ -202,7 +203,7 @@ class LoxTest {
                 print t;
                   """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualToIgnoringNewLines("""
                 1
@@ -226,7 +227,7 @@ class LoxTest {
                 counter();
                   """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualToIgnoringNewLines("""
                 1
@@ -246,7 +247,7 @@ class LoxTest {
                 }
                   """;
 
-        Lox.run(source);
+        lox.run(source);
 
         assertThat(stdOut.toString()).as(stdErr.toString()).isEqualToIgnoringNewLines("""
                 0
@@ -261,4 +262,152 @@ class LoxTest {
                 34
                 """);
     }
+
+    @Test void operatorsSeeingNewTypes() {
+        var source = """
+                fun add(a, b) { return a + b; }
+                fun negate(a) { return -a; }
+                fun either(a, b) { return a or b; }
+                print add(1, 2);
+                print add("a", "b");
+                print add(3, 4);
+                print negate(1);
+                print either(false, 2);
+                print either(nil, 3);
+                print either(true, 4);
+                print negate("x");
+                """;
+
+        lox.run(source);
+
+        assertThat(stdOut.toString()).isEqualTo("""
+                3
+                ab
+                7
+                -1
+                2
+                3
+                true
+                """);
+        assertThat(stdErr.toString()).startsWith("Operand must me a number.");
+    }
+
+    @Test void localsChangingFromNumbersToStrings() {
+        var source = """
+                {
+                    var x = 1;
+                    var y = 2;
+                    for (var i = 0; i < 3; i = i + 1) {
+                        x = x + y;
+                        print x;
+                        if (i == 0) {
+                            x = "a";
+                            y = "b";
+                        }
+                    }
+                    var z = -(y == "b" and 3);
+                    print z * 2;
+                }
+                """;
+
+        lox.run(source);
+
+        assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
+                3
+                ab
+                abb
+                -6
+                """);
+    }
+
+    @Test void numbersInLocalsOfFunctions() {
+        var source = """
+                fun side(x) { print "side"; return x; }
+                fun sum(n) {
+                    var total = 0;
+                    for (var i = 0; i < n; i = i + 1) total = total + i * 2 - -1;
+                    var text = 0;
+                    text = "n=" + "";
+                    print text;
+                    return total;
+                }
+                fun subtract(a) { return a - side(1); }
+                print sum(3);
+                print subtract(3);
+                print subtract("x");
+                """;
+
+        lox.run(source);
+
+        assertThat(stdOut.toString()).isEqualTo("""
+                n=
+                9
+                side
+                2
+                side
+                """);
+        assertThat(stdErr.toString()).startsWith("Operand must me a number.");
+    }
+
+    @Test void tailCallsRunInConstantStack() {
+        var source = """
+                fun isEven(n) {
+                    if (n == 0) return true;
+                    return isOdd(n - 1);
+                }
+                fun isOdd(n) {
+                    if (n == 0) return false;
+                    return isEven(n - 1);
+                }
+                class Counter {
+                    count(n, total) {
+                        if (n == 0) return total;
+                        return this.count(n - 1, total + 1);
+                    }
+                }
+                fun notTail(n) {
+                    if (n == 0) return 0;
+                    return 1 + notTail(n - 1);
+                }
+
+                print isEven(1000000);
+                print Counter().count(1000000, 0);
+                print notTail(100);
+                """;
+
+        lox.run(source);
+
+        assertThat(stdOut.toString()).as(stdErr.toString()).isEqualTo("""
+                true
+                1000000
+                100
+                """);
+    }
+
+    @Test void stringsBuiltPieceByPiece() {
+        var source = """
+                var s = "";
+                for (var i = 0; i < 20000; i = i + 1) s = s + "ab";
+                var t = "";
+                for (var i = 0; i < 20000; i = i + 1) t = "ab" + t;
+                print s == t;
+                print t == s;
+                print s == "abab";
+                print "abab" == "ab" + "ab";
+                print "ab" + "ab" != "abab";
+                var head = "";
+                for (var i = 0; i < 3; i = i + 1) head = head + i + "-";
+                """;
+
+        lox.run(source);
+
+        assertThat(stdOut.toString()).isEqualTo("""
+                true
+                true
+                false
+                true
+                false
+                """);
+        assertThat(stdErr.toString()).startsWith("Operands must be two strings or two numbers.");
+    }
 }
@@ -0,0 +1,52 @@
+package jlox;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProfilerTest {
+
+    @Test void sample_listsFramesWithTheirCallLines() {
+        Profiler.Stack stack = new Profiler.Stack();
+        assertThat(stack.sample()).isNull();
+
+        stack.start();
+        stack.callAt(12);
+        stack.enter("main");
+        for (int i = 0; i < 100; ++i) {
+            stack.callAt(3);
+            stack.enter("fib");
+        }
+        for (int i = 0; i < 99; ++i) stack.exit();
+        stack.callAt(7);
+        stack.enter("print");
+
+        assertThat(stack.sample()).isEqualTo("<script>;main:12;fib:3;print:7");
+        stack.stop();
+        assertThat(stack.sample()).isNull();
+    }
+
+    @Test void stop_takesTheStackOutOfSampling() {
+        Profiler.Stack stack = new Profiler.Stack();
+        int sampled = Profiler.sampled();
+
+        stack.start();
+        assertThat(Profiler.sampled()).isEqualTo(sampled + 1);
+        stack.stop();
+        assertThat(Profiler.sampled()).isEqualTo(sampled);
+    }
+
+    @Test void collapse_writesOneLinePerStack() {
+        Map<String, Long> samples = new TreeMap<>(Map.of("<script>;f:1", 3L, "<script>", 1L));
+        StringWriter out = new StringWriter();
+
+        Profiler.collapse(samples, new PrintWriter(out, true));
+
+        assertThat(out.toString()).isEqualTo("<script> 1\n<script>;f:1 3\n");
+    }
+}
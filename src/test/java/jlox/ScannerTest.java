@@ -2,6 +2,9 @@ package jlox;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.List;
 
 import static jlox.TokenType.EOF;
@@ -58,6 +61,56 @@ class ScannerTest {
         assertThat(tokens).containsExactly(identifier("orc"), token(EOF));
     }
 
+    @Test void scanTokens_internsIdentifiers() {
+        String source = "orc orc orca";
+        Scanner scanner = new Scanner(source);
+
+        List<Token> tokens = scanner.scanTokens();
+
+        assertThat(tokens.get(0).symbol()).isSameAs(tokens.get(1).symbol()).isSameAs(Symbol.of("orc"));
+        assertThat(tokens.get(0).lexeme()).isSameAs(tokens.get(1).lexeme());
+        assertThat(tokens.get(2).symbol()).isNotSameAs(tokens.get(0).symbol());
+        assertThat(tokens.get(2).symbol().hashCode()).isEqualTo("orca".hashCode());
+    }
+
+    @Test void scanTokens_makesTheTokensOfNextToken() {
+        String source = """
+                class A < B { init(x) { this.x = x >= 1.5 and !nil; } }
+                var s = "multi
+                line"; // comment
+                print super.f(s, 12) / -3;
+                """;
+
+        TokenBuffer tokens = new Scanner(source).scanTokens();
+
+        Scanner scanner = new Scanner(source);
+        for (Token token : tokens)
+            assertThat(token).isEqualTo(scanner.nextToken());
+        assertThat(tokens.type(12)).isEqualTo(IDENTIFIER);
+        assertThat(tokens.lexeme(12)).isSameAs(tokens.get(12).lexeme()).isEqualTo("x");
+        assertThat(tokens.literal(26)).isEqualTo("multi\nline");
+        assertThat(tokens.line(26)).isEqualTo(3);
+        assertThat(tokens.type(tokens.size() - 1)).isEqualTo(EOF);
+    }
+
+    @Test void nextToken_readsSourceInPieces() {
+        String text = "orc // comment\n\"a\nb\" 12.5 or";
+        Scanner scanner = new Scanner(new Reader() {
+            private final StringReader source = new StringReader(text);
+            @Override public int read(char[] buffer, int offset, int length) throws IOException {
+                return source.read(buffer, offset, Math.min(length, 1));
+            }
+            @Override public void close() {}
+        });
+
+        assertThat(scanner.nextToken()).isEqualTo(identifier("orc"));
+        assertThat(scanner.nextToken()).isEqualTo(new Token(STRING, "\"a\nb\"", "a\nb", 3));
+        assertThat(scanner.nextToken()).isEqualTo(new Token(NUMBER, "12.5", 12.5, 3));
+        assertThat(scanner.nextToken()).isEqualTo(new Token(OR, "or", null, 3));
+        assertThat(scanner.nextToken()).isEqualTo(new Token(EOF, "", null, 3));
+        assertThat(scanner.nextToken()).isEqualTo(new Token(EOF, "", null, 3));
+    }
+
     private static Token keyword(TokenType type) {
         return new Token(type, type.toString().toLowerCase(), null, 1);
     }
@@ -0,0 +1,103 @@
+package jlox;
+
+import extension.StdExtension;
+import extension.StdOut;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(StdExtension.class)
+class ScriptCacheTest {
+
+    @StdOut ByteArrayOutputStream stdOut;
+    @TempDir Path directory;
+
+    @Test void load_returnsTheResolvedScript() throws IOException {
+        var source = """
+                class A {
+                  init(name) { this.name = name; }
+                  greet() { return "hi " + this.name; }
+                }
+                class B < A {
+                  greet() { return super.greet() + "!"; }
+                }
+                fun counter() {
+                  var count = 0;
+                  fun next() { count = count + 1; return count; }
+                  return next;
+                }
+                var next = counter();
+                for (var i = 0; i < 3; i = i + 1) { next(); }
+                print next();
+                print B("lox").greet();
+                print !nil and 1.5 >= 1 or false;
+                """;
+        new Lox().run(source);
+        String expected = stdOut.toString();
+        stdOut.reset();
+
+        ScriptCache cache = new ScriptCache(directory.resolve("cache"));
+        String key = key(cache, source);
+        cache.store(key, resolve(source));
+        new Interpreter().interpret(cache.load(key));
+
+        assertThat(stdOut.toString()).isEqualTo(expected).isEqualTo("""
+                4
+                hi lox!
+                true
+                """);
+    }
+
+    @Test void load_missesUnknownAndBrokenEntries() throws IOException {
+        ScriptCache cache = new ScriptCache(directory);
+        String key = key(cache, "print 1;");
+        assertThat(cache.load(key)).isNull();
+
+        Files.write(directory.resolve(key), new byte[] {0, 0, 0, 1, 42});
+        assertThat(cache.load(key)).isNull();
+
+        // A print statement whose keyword claims a string of 2GB.
+        Files.write(directory.resolve(key), new byte[] {0, 0, 0, 1, 6, 0, 0x7f, -1, -1, -1, 'p'});
+        assertThat(cache.load(key)).isNull();
+    }
+
+    @Test void store_leavesOutWhatTheInterpreterCounts() throws IOException {
+        ScriptCache cache = new ScriptCache(directory);
+        List<Stmt> statements = resolve("fun f(a) { var b = a; }");
+        ((Stmt.Function) statements.get(0)).calls = 999;
+
+        cache.store("key", statements);
+
+        Stmt.Function function = (Stmt.Function) cache.load("key").get(0);
+        assertThat(function.slots).isEqualTo(2);
+        assertThat(function.calls).isZero();
+    }
+
+    @Test void key_differsBetweenScripts() throws IOException {
+        ScriptCache cache = new ScriptCache(directory);
+
+        assertThat(key(cache, "print 1;")).isEqualTo(key(cache, "print 1;")).isNotEqualTo(key(cache, "print 2;"));
+    }
+
+    private String key(ScriptCache cache, String source) throws IOException {
+        Path script = Files.writeString(directory.resolve("script.lox"), source);
+        try (FileChannel channel = FileChannel.open(script)) {
+            return cache.key(channel);
+        }
+    }
+
+    private static List<Stmt> resolve(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source)).parse();
+        new Resolver().resolve(statements);
+        return statements;
+    }
+}
@@ -0,0 +1,58 @@
+package jlox;
+
+import extension.StdErr;
+import extension.StdExtension;
+import extension.StdOut;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import javax.management.JMException;
+import javax.management.StandardMBean;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(StdExtension.class)
+class StatisticsTest {
+
+    @StdOut ByteArrayOutputStream stdOut;
+    @StdErr ByteArrayOutputStream stdErr;
+
+    @Test void counters_countWhatTheInterpreterDoes() {
+        Interpreter interpreter = new Interpreter();
+
+        interpreter.interpret(resolve("""
+                class A { init(x) { this.x = x; } }
+                class B < A {}
+                fun make(x) { return B(x); }
+                for (var i = 0; i < 3; i = i + 1) { var a = make(i); }
+                nil.field;
+                """));
+
+        Statistics.Counters counters = interpreter.statistics;
+        assertThat(counters.classDefinitions).isEqualTo(2);
+        assertThat(counters.instanceAllocations).isEqualTo(3);
+        // make and init, three times each.
+        assertThat(counters.functionCalls).isEqualTo(6);
+        // A frame for each call, the superclass scope of B, the for loop, its body three times.
+        assertThat(counters.environmentAllocations).isEqualTo(6 + 1 + 1 + 3);
+        assertThat(counters.runtimeErrors).isEqualTo(1);
+        assertThat(counters.interpretNanos).isPositive();
+    }
+
+    @Test void bean_sumsTheCountersOfAllInterpreters() throws JMException {
+        StandardMBean bean = new StandardMBean(new Statistics(), StatisticsMBean.class);
+        long before = (Long) bean.getAttribute("FunctionCalls");
+
+        for (int i = 0; i < 2; ++i) new Interpreter().interpret(resolve("fun f() {} f(); f();"));
+
+        assertThat((Long) bean.getAttribute("FunctionCalls")).isGreaterThanOrEqualTo(before + 4);
+    }
+
+    private static List<Stmt> resolve(String source) {
+        List<Stmt> statements = new Parser(new Scanner(source)).parse();
+        new Resolver().resolve(statements);
+        return statements;
+    }
+}
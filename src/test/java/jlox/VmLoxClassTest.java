@@ -0,0 +1,9 @@
+package jlox;
+
+import org.junit.jupiter.api.BeforeEach;
+
+// Same programs, executed by the bytecode VM.
+class VmLoxClassTest extends LoxClassTest {
+
+    @BeforeEach void useVm() {lox = new Lox(true, Jit.THRESHOLD);}
+}